@@ -0,0 +1,37 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+
+import java.util.Map;
+
+/**
+ * Posters that never leave the process, so that benchmarks measure the reporter and not the network.
+ */
+class BenchmarkPosters {
+    private static final byte[] EMPTY_RESPONSE = "{}".getBytes();
+
+    static final IPoster DISCARDING = new IPoster() {
+        @Override
+        public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                 Map<String, String> headers, byte[] payload) {
+            return OK;
+        }
+    };
+
+    private static final HttpResponse OK = new HttpResponse() {
+        @Override
+        public int getResponseCode() {
+            return 200;
+        }
+
+        @Override
+        public byte[] getResponseBody() {
+            return EMPTY_RESPONSE;
+        }
+    };
+
+    private BenchmarkPosters() {
+    }
+}
@@ -0,0 +1,78 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-metric building blocks: signal encoding and decoding, name cache lookups and delta tracking.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CodecBenchmark {
+    private Signal signal;
+    private String encodedSignal;
+    private NameCache nameCache;
+    private DeltaTracker deltaTracker;
+    private int slot;
+    private long count;
+    private final Supplier<String> encoder = new Supplier<String>() {
+        @Override
+        public String get() {
+            return Json.serialize(signal);
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        signal = new Signal("service.requests", Arrays.asList(new Tag("host", "web-17"), new Tag("region", "us-east-1")), false);
+        encodedSignal = Json.serialize(signal);
+        nameCache = new NameCache(5000);
+        nameCache.get(signal, encoder);
+        MetricRegistry registry = new MetricRegistry();
+        registry.meter(encodedSignal);
+        deltaTracker = new DeltaTracker(new DeltaMetricSupplier(registry));
+        slot = deltaTracker.slot(encodedSignal);
+    }
+
+    @Benchmark
+    public Signal decodeSignal() {
+        return Signal.decode(encodedSignal);
+    }
+
+    @Benchmark
+    public String serializeSignal() {
+        return Json.serialize(signal);
+    }
+
+    @Benchmark
+    public String nameCacheHit() {
+        return nameCache.get(signal, encoder);
+    }
+
+    @Benchmark
+    public long deltaBySlot() {
+        return deltaTracker.getDelta(slot, count += 3);
+    }
+
+    @Benchmark
+    public Long deltaByName() {
+        return deltaTracker.getDelta(encodedSignal, count += 3);
+    }
+}
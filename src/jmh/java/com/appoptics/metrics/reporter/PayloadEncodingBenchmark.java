@@ -0,0 +1,80 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.IMeasure;
+import com.appoptics.metrics.client.Measure;
+import com.appoptics.metrics.client.Measures;
+import com.appoptics.metrics.client.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding one batch of measures: through measure objects and the object mapper, the way the
+ * client does, against streaming through a {@link PayloadEncoder}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PayloadEncodingBenchmark {
+    @Param({"500"})
+    int measures;
+
+    private EmissionPlan[] plans;
+    private final PayloadEncoder encoder = new PayloadEncoder(64 * 1024);
+
+    @Setup
+    public void setUp() {
+        plans = new EmissionPlan[measures];
+        List<Tag> reporterTags = Collections.singletonList(new Tag("env", "production"));
+        for (int i = 0; i < measures; i++) {
+            String name = Json.serialize(new Signal("service.metric" + i,
+                    Collections.singletonList(new Tag("host", "host" + i % 50)), false));
+            plans[i] = EmissionPlan.compile(name, "app", ".", MetricExpansionConfig.ALL, reporterTags);
+        }
+    }
+
+    @Benchmark
+    public String measureObjects() {
+        Measures batch = new Measures(Collections.<Tag>emptyList(), 1500000000L, 60);
+        for (int i = 0; i < measures; i++) {
+            batch.add(new Measure(plans[i].name, i, plans[i].tags));
+        }
+        Map<String, Object> payload = new HashMap<String, Object>();
+        payload.put("time", batch.getEpoch());
+        payload.put("period", batch.getPeriod());
+        List<Map<String, Object>> measurements = new ArrayList<Map<String, Object>>();
+        for (IMeasure measure : batch.getMeasures()) {
+            measurements.add(measure.toMap());
+        }
+        payload.put("measurements", measurements);
+        return Json.serialize(payload);
+    }
+
+    @Benchmark
+    public byte[] streaming() throws IOException {
+        encoder.begin(1500000000L, 60);
+        for (int i = 0; i < measures; i++) {
+            encoder.add(plans[i].encodedName, plans[i].encodedTags, i, 1, i, i);
+        }
+        return encoder.finish();
+    }
+}
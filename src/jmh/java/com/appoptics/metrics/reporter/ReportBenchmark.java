@@ -0,0 +1,112 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full report cycle, from reading the registry to handing encoded payloads to a discarding poster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReportBenchmark {
+    @Param({"1000", "10000", "200000"})
+    int series;
+
+    /**
+     * counters: only counters; timers: only timers; mixed: equal shares of every metric type
+     */
+    @Param({"counters", "mixed", "timers"})
+    String mix;
+
+    @Param({"false", "true"})
+    boolean streaming;
+
+    private MetricRegistry registry;
+    private AppopticsReporter reporter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new MetricRegistry();
+        for (int i = 0; i < series; i++) {
+            final long value = i;
+            Appoptics metric = Appoptics.metric(registry, "service.metric" + i).tag("host", "host" + i % 50);
+            switch (kindOf(i)) {
+                case 0:
+                    metric.counter().inc(i);
+                    break;
+                case 1:
+                    metric.histogram(new Histogram(new UniformReservoir())).update(i);
+                    break;
+                case 2:
+                    metric.meter().mark(i);
+                    break;
+                case 3:
+                    metric.gauge(new Gauge<Long>() {
+                        @Override
+                        public Long getValue() {
+                            return value;
+                        }
+                    });
+                    break;
+                default:
+                    Timer timer = metric.timer();
+                    for (int j = 0; j < 10; j++) {
+                        timer.update(i + j, TimeUnit.MILLISECONDS);
+                    }
+            }
+        }
+        ReporterAttributes atts = new ReporterAttributes();
+        atts.registry = registry;
+        atts.token = "token";
+        atts.poster = BenchmarkPosters.DISCARDING;
+        atts.deleteIdleStats = false;
+        atts.streamingEncoding = streaming;
+        reporter = new AppopticsReporter(atts);
+    }
+
+    private int kindOf(int i) {
+        if ("counters".equals(mix)) {
+            return 0;
+        }
+        if ("timers".equals(mix)) {
+            return 4;
+        }
+        return i % 5;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reporter.stop();
+    }
+
+    @Benchmark
+    public void report() {
+        reporter.report(registry.getGauges(),
+                registry.getCounters(),
+                registry.getHistograms(),
+                registry.getMeters(),
+                registry.getTimers());
+    }
+}
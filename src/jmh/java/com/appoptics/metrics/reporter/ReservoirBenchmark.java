@@ -0,0 +1,88 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Update throughput of the reservoirs as the number of recording threads grows, with one shared
+ * reservoir, like a per-endpoint request timer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReservoirBenchmark {
+    @Param({"exponentiallyDecaying", "slidingTimeWindowArray", "interval", "bucketedWindow", "striped"})
+    String reservoirType;
+
+    private Reservoir reservoir;
+
+    @Setup
+    public void setUp() {
+        if ("exponentiallyDecaying".equals(reservoirType)) {
+            reservoir = new ExponentiallyDecayingReservoir();
+        } else if ("slidingTimeWindowArray".equals(reservoirType)) {
+            reservoir = new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES);
+        } else if ("interval".equals(reservoirType)) {
+            reservoir = new IntervalReservoir();
+        } else if ("bucketedWindow".equals(reservoirType)) {
+            reservoir = new BucketedWindowReservoir(1, TimeUnit.MINUTES);
+        } else {
+            reservoir = new StripedReservoir();
+        }
+    }
+
+    private void update() {
+        reservoir.update(ThreadLocalRandom.current().nextLong(1000, 100000000));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void update1Thread() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void update8Threads() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void update64Threads() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(400)
+    public void update400Threads() {
+        update();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Snapshot snapshot() {
+        update();
+        return reservoir.getSnapshot();
+    }
+}
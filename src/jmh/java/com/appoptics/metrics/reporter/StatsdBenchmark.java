@@ -0,0 +1,103 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lines per second the aggregator parses and records, and the emitter buffers and sends. Each
+ * packet holds {@link #LINES} lines spread over {@code series} tagged series.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StatsdBenchmark {
+    static final int LINES = 20;
+    private static final int PACKETS = 64;
+
+    @Param({"100", "10000"})
+    int series;
+
+    @Param({"c", "ms"})
+    String type;
+
+    private StatsdAggregator aggregator;
+    private StatsdEmitter emitter;
+    private byte[][] packets;
+    private Tag[][] tags;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        aggregator = new StatsdAggregator(new MetricRegistry(), loopback);
+        emitter = new StatsdEmitter(new InetSocketAddress(InetAddress.getLoopbackAddress(), aggregator.getPort()));
+        packets = new byte[PACKETS][];
+        for (int p = 0; p < PACKETS; p++) {
+            StringBuilder packet = new StringBuilder();
+            for (int l = 0; l < LINES; l++) {
+                int s = (p * LINES + l) % series;
+                packet.append("service.requests").append(s % 10).append(':').append(l + 1).append('|').append(type)
+                        .append("|#host:host").append(s / 10).append(",route:route").append(s % 7).append('\n');
+            }
+            packets[p] = packet.toString().getBytes("UTF-8");
+        }
+        tags = new Tag[series][];
+        for (int s = 0; s < series; s++) {
+            tags[s] = new Tag[]{new Tag("host", "host" + s / 10), new Tag("route", "route" + s % 7)};
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        emitter.close();
+        aggregator.close();
+    }
+
+    /**
+     * Parses and records a packet, without the socket.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void ingest() {
+        byte[] packet = packets[next++ & (PACKETS - 1)];
+        aggregator.ingest(packet, packet.length);
+    }
+
+    /**
+     * Formats and buffers lines, sending a packet whenever one is full.
+     */
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void emit() {
+        int base = next++;
+        for (int l = 0; l < LINES; l++) {
+            int s = (base * LINES + l) % series;
+            if ("c".equals(type)) {
+                emitter.count("service.requests" + s % 10, l + 1, tags[s]);
+            } else {
+                emitter.timing("service.requests" + s % 10, l + 1, tags[s]);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolving and updating tagged timers from many threads, the way application code does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+@Fork(1)
+public class TaggedMetricBenchmark {
+    @Param({"1000", "200000"})
+    int series;
+
+    private final MetricRegistry registry = new MetricRegistry();
+    private String[] names;
+    private String[] hosts;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = (int) (Thread.currentThread().getId() * 7919);
+    }
+
+    @Setup
+    public void setUp() {
+        names = new String[series];
+        hosts = new String[series];
+        for (int i = 0; i < series; i++) {
+            names[i] = "service.latency" + i % 100;
+            hosts[i] = "host" + i / 100;
+        }
+        for (int i = 0; i < series; i++) {
+            Appoptics.metric(registry, names[i]).tag("host", hosts[i]).timer();
+        }
+    }
+
+    @Benchmark
+    public Timer resolveTaggedTimer(Cursor cursor) {
+        int i = (cursor.next++ & Integer.MAX_VALUE) % series;
+        return Appoptics.metric(registry, names[i]).tag("host", hosts[i]).timer();
+    }
+
+    @Benchmark
+    public void updateTaggedTimer(Cursor cursor) {
+        int i = (cursor.next++ & Integer.MAX_VALUE) % series;
+        Appoptics.metric(registry, names[i]).tag("host", hosts[i]).timer().update(i, TimeUnit.MICROSECONDS);
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -22,7 +23,13 @@ public class Appoptics {
     });
     public static final AtomicReference<MetricRegistry> defaultRegistry = new AtomicReference<MetricRegistry>(new MetricRegistry());
     public static final AtomicReference<Duration> defaultWindow = new AtomicReference<Duration>(new Duration(1, TimeUnit.MINUTES));
+    /**
+     * If set, {@link #window()} and {@link #window(long, TimeUnit)} use a {@link BucketedWindowReservoir}
+     * instead of a {@link SlidingTimeWindowArrayReservoir}, so that memory does not grow with traffic.
+     */
+    public static final AtomicBoolean bucketedWindows = new AtomicBoolean();
     private static final NameCache nameCache = new NameCache(5000);
+    private static final TagLimiter tagLimiter = new TagLimiter();
     private final MetricRegistry registry;
     private final String name;
     private List<Tag> tags = Collections.emptyList();
@@ -33,6 +40,23 @@ public class Appoptics {
         return new ReporterBuilder(registry, token);
     }
 
+    /**
+     * The cache of encoded names for tagged metrics. Its size may be changed and its hit, miss and
+     * eviction counts read through the returned instance.
+     */
+    public static NameCache nameCache() {
+        return nameCache;
+    }
+
+    /**
+     * The caps on distinct tag sets per metric name and in total. Tag sets past a cap are folded
+     * into an overflow series; the caps may be changed and the fold count read through the
+     * returned instance.
+     */
+    public static TagLimiter tagLimiter() {
+        return tagLimiter;
+    }
+
     public static Appoptics metric(String name) {
         MetricRegistry registry = defaultRegistry.get();
         return metric(registry, name);
@@ -57,7 +81,7 @@ public class Appoptics {
             @Override
             public Reservoir get() {
                 Duration window = defaultWindow.get();
-                return new SlidingTimeWindowArrayReservoir(window.duration, window.timeUnit);
+                return windowReservoir(window.duration, window.timeUnit);
             }
         };
         return this;
@@ -67,12 +91,19 @@ public class Appoptics {
         this.reservoir = new Supplier<Reservoir>() {
             @Override
             public Reservoir get() {
-                return new SlidingTimeWindowArrayReservoir(window, unit);
+                return windowReservoir(window, unit);
             }
         };
         return this;
     }
 
+    private static Reservoir windowReservoir(long window, TimeUnit unit) {
+        if (bucketedWindows.get()) {
+            return new BucketedWindowReservoir(window, unit);
+        }
+        return new SlidingTimeWindowArrayReservoir(window, unit);
+    }
+
     public Appoptics tag(String name, Object value) {
         addTag(new Tag(name, value.toString()));
         return this;
@@ -187,12 +218,25 @@ public class Appoptics {
     }
 
     private <T extends Metric> T register(Class<T> klass, Supplier<T> metric) {
+        MetricHandles handles = MetricHandles.of(registry);
         Signal signal = createSignal();
-        if (signal == null) {
-            return register(registry, name, metric, klass);
+        Object key = signal == null ? name : signal;
+        Metric found = handles.get(key);
+        if (found != null) {
+            return verifyFound(found, klass);
+        }
+        if (signal != null && !tagLimiter.admits(signal)) {
+            signal = tagLimiter.fold(signal);
+            key = signal;
+            found = handles.get(key);
+            if (found != null) {
+                return verifyFound(found, klass);
+            }
         }
-        String encodedName = encodeName(signal);
-        return register(registry, encodedName, metric, klass);
+        String registryName = signal == null ? name : encodeName(signal);
+        T registered = register(registry, registryName, metric, klass);
+        handles.put(key, registryName, registered);
+        return registered;
     }
 
     private <T extends Metric> T register(MetricRegistry registry,
@@ -5,11 +5,21 @@ import com.appoptics.metrics.client.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.SocketTimeoutException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.appoptics.metrics.reporter.ExpandedMetric.*;
 
@@ -18,18 +28,45 @@ import static com.appoptics.metrics.reporter.ExpandedMetric.*;
  */
 public class AppopticsReporter extends ScheduledReporter implements RateConverter, DurationConverter {
     private static final Logger log = LoggerFactory.getLogger(AppopticsReporter.class);
+    private static final int INITIAL_PAYLOAD_BYTES = 64 * 1024;
+    // bounds the retries of reports that are run without start(), which have no period
+    private static final long UNSCHEDULED_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
     private static MetricRegistry registry;
+    private final MetricRegistry metricRegistry;
     private final AppopticsClient client;
     private final DeltaTracker deltaTracker;
-    private final String prefix;
-    private final String prefixDelimiter;
-    private final MetricExpansionConfig expansionConfig;
+    private final EmissionPlans plans;
     private final boolean deleteIdleStats;
     private final boolean omitComplexGauges;
-    private final List<Tag> tags;
     private final RateConverter rateConverter;
     private final DurationConverter durationConverter;
+    private final int reportParallelism;
+    private final ExecutorService shardExecutor;
+    private final PostingQueue postingQueue;
+    private final PostRetrier retrier;
+    private final CycleBudget cycleBudget;
+    private final ReportSchedule schedule;
+    private final GzipPoster gzipPoster;
+    private final ReporterMetrics reporterMetrics;
+    private final BatchPoster batchPoster;
+    private final int maxBatchMeasures;
+    private final int maxBatchBytes;
+    private final boolean streamingEncoding;
+    private final ThreadLocal<PayloadEncoder> encoders = new ThreadLocal<PayloadEncoder>() {
+        @Override
+        protected PayloadEncoder initialValue() {
+            return new PayloadEncoder(INITIAL_PAYLOAD_BYTES);
+        }
+    };
+    private final MeasuresSpool spool;
+    private final PayloadPoster payloadPoster;
+    private final int spoolReplayRate;
+    private final AtomicBoolean retryableFailures = new AtomicBoolean();
+    private final String metricsName;
+    private final List<String> counterNames = new ArrayList<String>();
     private volatile Integer defaultPeriod;
+    private volatile long schedulePeriodMillis;
+    private volatile long periodNanos;
 
     public static ReporterBuilder builder(MetricRegistry registry,
                                           String token) {
@@ -44,25 +81,234 @@ public class AppopticsReporter extends ScheduledReporter implements RateConverte
                 atts.reporterName,
                 atts.metricFilter,
                 atts.rateUnit,
-                atts.durationUnit);
+                atts.durationUnit,
+                atts.executor,
+                atts.executor == null);
         Appoptics.defaultRegistry.set(atts.registry);
+        this.metricRegistry = atts.registry;
         this.client = atts.appopticsClientFactory.build(atts);
+        this.gzipPoster = atts.compress ? (GzipPoster) atts.resolvePoster() : null;
         this.deltaTracker = new DeltaTracker(new DeltaMetricSupplier(atts.registry));
-        this.prefix = checkPrefix(atts.prefix);
-        this.prefixDelimiter = atts.prefixDelimiter;
-        this.expansionConfig = atts.expansionConfig;
+        this.plans = new EmissionPlans(
+                checkPrefix(atts.prefix),
+                atts.prefixDelimiter,
+                atts.expansionConfig,
+                expansionRules(atts),
+                atts.tags);
+        this.metricRegistry.addListener(plans);
+        this.metricRegistry.addListener(deltaTracker);
         this.deleteIdleStats = atts.deleteIdleStats;
         this.omitComplexGauges = atts.omitComplexGauges;
-        this.tags = atts.tags;
         this.rateConverter = atts.rateConverter != null ? atts.rateConverter : this;
         this.durationConverter = atts.durationConverter != null ? atts.durationConverter : this;
+        this.reportParallelism = atts.reportParallelism;
+        this.shardExecutor = reportParallelism > 1
+                ? Executors.newFixedThreadPool(reportParallelism, new DaemonThreadFactory(atts.reporterName + "-shard"))
+                : null;
+        int maxInflightBatches = atts.maxInflightBatches > 0 ? atts.maxInflightBatches : reportParallelism;
+        this.postingQueue = atts.postingQueueCapacity > 0
+                ? new PostingQueue(atts.postingQueueCapacity, maxInflightBatches, atts.overflowPolicy, atts.reporterName)
+                : null;
+        this.spool = openSpool(atts);
+        this.streamingEncoding = atts.streamingEncoding;
+        this.payloadPoster = spool != null || atts.retryPolicy != null || streamingEncoding
+                ? new PayloadPoster(atts)
+                : null;
+        this.retrier = atts.retryPolicy != null ? new PostRetrier(atts.retryPolicy, payloadPoster) : null;
+        this.batchPoster = new BatchPoster(client, payloadPoster, maxInflightBatches, postingQueue, retrier, new BatchPoster.ResultHandler() {
+            @Override
+            public void handle(Batch batch, PostMeasuresResult result) {
+                // batches dropped from the posting queue were never posted
+                if (reporterMetrics != null && batch.postNanos > 0) {
+                    reporterMetrics.posted(batch.postNanos, batch.estimatedBytes);
+                }
+                if (batch.replay) {
+                    handleReplayResults(result);
+                } else {
+                    handlePostResults(result);
+                }
+            }
+        }, atts.reporterName);
+        this.maxBatchMeasures = atts.maxBatchMeasures;
+        this.maxBatchBytes = atts.maxBatchBytes;
+        this.spoolReplayRate = atts.spoolReplayRate;
+        this.cycleBudget = atts.cycleBudget;
+        this.schedule = atts.schedule;
+        this.metricsName = registerCounters(atts.reporterName);
+        this.reporterMetrics = atts.selfMetricsPrefix != null
+                ? new ReporterMetrics(atts.selfMetricsPrefix, streamingEncoding, Appoptics.nameCache(), Appoptics.tagLimiter(), deltaTracker)
+                : null;
+        if (reporterMetrics != null) {
+            reporterMetrics.register(metricRegistry);
+        }
+    }
+
+    private static List<ExpansionRule> expansionRules(ReporterAttributes atts) {
+        if (atts.selfMetricsPrefix == null) {
+            return atts.expansionRules;
+        }
+        List<ExpansionRule> rules = new ArrayList<ExpansionRule>(atts.expansionRules);
+        rules.add(ReporterMetrics.expansionRule(atts.selfMetricsPrefix));
+        return rules;
+    }
+
+    /**
+     * Registers the retry and cycle counters under the reporter name, or, if another reporter on
+     * the registry already uses that name, under the name with the first free numeric suffix.
+     *
+     * @return the name the counters are registered under
+     */
+    private String registerCounters(String reporterName) {
+        Map<String, Metric> counters = new LinkedHashMap<String, Metric>();
+        if (retrier != null) {
+            counters.put(MetricRegistry.name("post", "retries"), retrier.getRetries());
+            counters.put(MetricRegistry.name("post", "retryRecoveries"), retrier.getRecoveries());
+            counters.put(MetricRegistry.name("post", "retryGiveUps"), retrier.getGiveUps());
+        }
+        if (cycleBudget != null) {
+            counters.put(MetricRegistry.name("cycle", "degradations"), cycleBudget.getDegradations());
+            counters.put(MetricRegistry.name("cycle", "recoveries"), cycleBudget.getRecoveries());
+            counters.put(MetricRegistry.name("cycle", "skipped"), cycleBudget.getSkippedCycles());
+        }
+        if (counters.isEmpty()) {
+            return reporterName;
+        }
+        // reporters built concurrently on one registry must not pick the same name
+        synchronized (metricRegistry) {
+            String name = reporterName;
+            for (int suffix = 2; isTaken(name, counters.keySet()); suffix++) {
+                name = reporterName + "-" + suffix;
+            }
+            for (Map.Entry<String, Metric> counter : counters.entrySet()) {
+                String counterName = MetricRegistry.name(name, counter.getKey());
+                metricRegistry.register(counterName, counter.getValue());
+                counterNames.add(counterName);
+            }
+            return name;
+        }
+    }
+
+    private boolean isTaken(String name, Set<String> counterNames) {
+        Set<String> registered = metricRegistry.getNames();
+        for (String counterName : counterNames) {
+            if (registered.contains(MetricRegistry.name(name, counterName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeCounters() {
+        for (String name : counterNames) {
+            metricRegistry.remove(name);
+        }
+    }
+
+    private static MeasuresSpool openSpool(ReporterAttributes atts) {
+        if (atts.spoolFile == null) {
+            return null;
+        }
+        try {
+            return new MeasuresSpool(atts.spoolFile, atts.spoolMaxBytes);
+        } catch (IOException e) {
+            log.error("Could not open spool " + atts.spoolFile + ", failed posts will not be replayed", e);
+            return null;
+        }
     }
 
     @Override
     public void start(long period, TimeUnit unit) {
         Appoptics.defaultWindow.set(new Duration(period, unit));
         defaultPeriod = (int) (unit.toSeconds(period));
-        super.start(period, unit);
+        periodNanos = unit.toNanos(period);
+        if (schedule == null) {
+            super.start(period, unit);
+            return;
+        }
+        long periodMillis = unit.toMillis(period);
+        schedulePeriodMillis = periodMillis;
+        super.start(schedule.initialDelayMillis(System.currentTimeMillis(), periodMillis), periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the name the reporter's retry and cycle counters are registered under: the reporter
+     * name, with a numeric suffix such as {@code appoptics-2} if another reporter on the same
+     * registry already registered its counters under that name
+     */
+    public String getMetricsName() {
+        return metricsName;
+    }
+
+    /**
+     * @return the queue of batches waiting to be posted, or null if batches are posted synchronously
+     */
+    public PostingQueue getPostingQueue() {
+        return postingQueue;
+    }
+
+    /**
+     * @return the reporter's measurements of its own cost, or null if they are not enabled
+     */
+    public ReporterMetrics getReporterMetrics() {
+        return reporterMetrics;
+    }
+
+    /**
+     * @return the compressing poster, or null if request bodies are not compressed
+     */
+    public GzipPoster getGzipPoster() {
+        return gzipPoster;
+    }
+
+    /**
+     * @return the retrier of failed posts, or null if failed posts are not retried
+     */
+    public PostRetrier getPostRetrier() {
+        return retrier;
+    }
+
+    /**
+     * @return the budget of report cycles, or null if cycles are not budgeted
+     */
+    public CycleBudget getCycleBudget() {
+        return cycleBudget;
+    }
+
+    /**
+     * @return the spool of payloads waiting to be replayed, or null if spooling is disabled
+     */
+    public MeasuresSpool getSpool() {
+        return spool;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            super.stop();
+        } finally {
+            metricRegistry.removeListener(plans);
+            metricRegistry.removeListener(deltaTracker);
+            removeCounters();
+            if (reporterMetrics != null) {
+                reporterMetrics.remove(metricRegistry);
+            }
+            if (shardExecutor != null) {
+                shardExecutor.shutdown();
+            }
+            batchPoster.shutdown();
+            closeSpool();
+        }
+    }
+
+    private void closeSpool() {
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.close();
+        } catch (IOException e) {
+            log.warn("Could not close spool", e);
+        }
     }
 
     public void report(SortedMap<String, Gauge> gauges,
@@ -70,25 +316,185 @@ public class AppopticsReporter extends ScheduledReporter implements RateConverte
                        SortedMap<String, Histogram> histograms,
                        SortedMap<String, Meter> meters,
                        SortedMap<String, Timer> timers) {
-        long epoch = System.currentTimeMillis() / 1000;
-        Measures measures = new Measures(Collections.<Tag>emptyList(), epoch, defaultPeriod);
-        addGauges(measures, gauges);
-        addCounters(measures, counters);
-        addHistograms(measures, histograms);
-        addMeters(measures, meters);
-        addTimers(measures, timers);
+        if (cycleBudget != null && !cycleBudget.startCycle()) {
+            return;
+        }
+        final long epoch = schedule != null
+                ? schedule.epoch(System.currentTimeMillis(), schedulePeriodMillis)
+                : System.currentTimeMillis() / 1000;
+        final long start = System.nanoTime();
+        final Integer period = effectivePeriod();
+        final long deadline = start + effectivePeriodNanos();
+        deltaTracker.reclaim();
+        plans.cycleStarted();
         try {
-            PostMeasuresResult postResults = client.postMeasures(measures);
-            for (PostResult result : postResults.results) {
-                if (result.isError()) {
-                    handlePostFailure(result);
+            if (shardExecutor == null) {
+                awaitBatches(collect(epoch, period, deadline, gauges, counters, histograms, meters, timers));
+            } else {
+                List<Future<List<Batch>>> futures = new ArrayList<Future<List<Batch>>>(reportParallelism);
+                for (final MetricShard shard : MetricShard.partition(
+                        reportParallelism, gauges, counters, histograms, meters, timers)) {
+                    futures.add(shardExecutor.submit(new Callable<List<Batch>>() {
+                        @Override
+                        public List<Batch> call() throws Exception {
+                            return collect(epoch, period, deadline, shard.gauges, shard.counters, shard.histograms, shard.meters, shard.timers);
+                        }
+                    }));
+                }
+                for (Future<List<Batch>> future : futures) {
+                    try {
+                        awaitBatches(future.get());
+                    } catch (ExecutionException e) {
+                        log.error("Failure to report shard", e.getCause());
+                    }
                 }
             }
-        } catch (Exception e) {
-            log.error("Failure to post to Librato", e);
+            replaySpool(deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (reporterMetrics != null) {
+                reporterMetrics.cycleEnded(System.nanoTime() - start);
+            }
+            if (cycleBudget != null) {
+                cycleBudget.endCycle();
+            }
         }
     }
 
+    /**
+     * @return the period the measures cover, which is longer than the scheduled one while the
+     * cycle budget has widened the interval
+     */
+    private Integer effectivePeriod() {
+        Integer period = defaultPeriod;
+        if (period == null || cycleBudget == null) {
+            return period;
+        }
+        return period * cycleBudget.interval();
+    }
+
+    /**
+     * @return the time the cycle may take, which bounds the retries of all of its batches
+     */
+    private long effectivePeriodNanos() {
+        long nanos = periodNanos > 0 ? periodNanos : UNSCHEDULED_PERIOD_NANOS;
+        return cycleBudget != null ? nanos * cycleBudget.interval() : nanos;
+    }
+
+    private List<Batch> collect(long epoch,
+                                Integer period,
+                                long deadline,
+                                SortedMap<String, Gauge> gauges,
+                                SortedMap<String, Counter> counters,
+                                SortedMap<String, Histogram> histograms,
+                                SortedMap<String, Meter> meters,
+                                SortedMap<String, Timer> timers) throws InterruptedException {
+        ReadingSink sink = streamingEncoding
+                ? new PayloadBatcher(epoch, period, deadline, maxBatchMeasures, maxBatchBytes, batchPoster,
+                        encoders.get(), reporterMetrics)
+                : new MeasuresBatcher(epoch, period, deadline, maxBatchMeasures, maxBatchBytes, batchPoster,
+                        reporterMetrics);
+        long start = System.nanoTime();
+        addGauges(sink, gauges);
+        start = lap(ReporterMetrics.GAUGES, start);
+        addCounters(sink, counters);
+        start = lap(ReporterMetrics.COUNTERS, start);
+        addHistograms(sink, histograms);
+        start = lap(ReporterMetrics.HISTOGRAMS, start);
+        addMeters(sink, meters);
+        start = lap(ReporterMetrics.METERS, start);
+        addTimers(sink, timers);
+        lap(ReporterMetrics.TIMERS, start);
+        return sink.flush();
+    }
+
+    private long lap(int metricType, long start) {
+        return reporterMetrics != null ? reporterMetrics.collected(metricType, start) : start;
+    }
+
+    private void awaitBatches(List<Batch> batches) throws InterruptedException {
+        if (batchPoster.isAsync()) {
+            return;
+        }
+        for (Batch batch : batches) {
+            batch.await();
+        }
+    }
+
+    private void handlePostResults(PostMeasuresResult postResults) {
+        for (PostResult result : postResults.results) {
+            if (handleFailure(result) && spool != null && result.payload != null) {
+                spool.append(result.payload);
+            }
+        }
+    }
+
+    /**
+     * Removes a replayed payload from the spool once it is posted. A payload that fails again is
+     * left at the head of the spool, so that it is neither lost nor reordered.
+     */
+    private void handleReplayResults(PostMeasuresResult postResults) {
+        for (PostResult result : postResults.results) {
+            handleFailure(result);
+        }
+        if (posted(postResults)) {
+            spool.commit();
+        }
+    }
+
+    /**
+     * @return true if the result is a failure that is worth posting again
+     */
+    private boolean handleFailure(PostResult result) {
+        if (!result.isError()) {
+            return false;
+        }
+        handlePostFailure(result);
+        if (reporterMetrics != null) {
+            reporterMetrics.failed(result);
+        }
+        if (!PostResults.isRetryable(result)) {
+            return false;
+        }
+        retryableFailures.set(true);
+        return true;
+    }
+
+    /**
+     * Replays a limited number of spooled payloads, oldest first, through the batch poster once
+     * the cycle's own batches are posted or queued. Posting is healthy when no post failed in a
+     * retryable way since the previous cycle, which is decided once per cycle. Replays are posted
+     * one at a time and the result handler removes each from the spool only once it is posted,
+     * so replaying stops at the first payload that fails again and leaves it at the head.
+     */
+    private void replaySpool(long deadline) throws InterruptedException {
+        boolean healthy = !retryableFailures.getAndSet(false);
+        if (spool == null || !healthy) {
+            return;
+        }
+        for (int i = 0; i < spoolReplayRate; i++) {
+            byte[] payload = spool.peek();
+            if (payload == null) {
+                break;
+            }
+            Batch batch = Batch.replay(payload, deadline);
+            batchPoster.submit(batch);
+            if (!posted(batch.await())) {
+                break;
+            }
+        }
+    }
+
+    private static boolean posted(PostMeasuresResult postResults) {
+        for (PostResult result : postResults.results) {
+            if (result.isError()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void handlePostFailure(PostResult result) {
         Exception exception = result.exception;
         if (exception != null) {
@@ -115,82 +521,109 @@ public class AppopticsReporter extends ScheduledReporter implements RateConverte
         return cause;
     }
 
-    private void addGauges(Measures measures, SortedMap<String, Gauge> gauges) {
-        for (String metricName : gauges.keySet()) {
-            Gauge gauge = gauges.get(metricName);
-            Number number = Numbers.getNumberFrom(gauge.getValue());
+    private void addGauges(ReadingSink sink, SortedMap<String, Gauge> gauges) {
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            Number number = Numbers.getNumberFrom(entry.getValue().getValue());
             if (number != null) {
-                addAppopticsGauge(measures, convertToSignal(metricName), number.doubleValue());
+                addAppopticsGauge(sink, plans.get(entry.getKey()), number.doubleValue());
             }
         }
     }
 
-    private void addCounters(Measures measures, SortedMap<String, Counter> counters) {
-        for (String metricName : counters.keySet()) {
-            Counter counter = counters.get(metricName);
-            long count = counter.getCount();
-            addAppopticsGauge(measures, convertToSignal(metricName), count);
+    private void addCounters(ReadingSink sink, SortedMap<String, Counter> counters) {
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            long count = entry.getValue().getCount();
+            addAppopticsGauge(sink, plans.get(entry.getKey()), count);
         }
     }
 
-    private void addHistograms(Measures measures, SortedMap<String, Histogram> histograms) {
-        for (String metricName : histograms.keySet()) {
-            Histogram histogram = histograms.get(metricName);
-            if (skipMetric(metricName, histogram)) {
+    private void addHistograms(ReadingSink sink, SortedMap<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            String metricName = entry.getKey();
+            Histogram histogram = entry.getValue();
+            int slot = deltaTracker.reportSlot(metricName);
+            long count = histogram.getCount();
+            if (skipMetric(slot, count)) {
                 continue;
             }
-            Long countDelta = deltaTracker.getDelta(metricName, histogram.getCount());
-            maybeAdd(measures, COUNT, metricName, countDelta);
+            EmissionPlan plan = plans.get(metricName);
+            maybeAdd(sink, plan, COUNT, deltaTracker.getDelta(slot, count));
             final boolean convertDurations = false;
-            addSampling(measures, metricName, histogram, convertDurations);
+            addSampling(sink, plan, histogram, convertDurations);
         }
     }
 
-    private void addMeters(Measures measures, SortedMap<String, Meter> meters) {
-        for (String metricName : meters.keySet()) {
-            Meter meter = meters.get(metricName);
-            if (skipMetric(metricName, meter)) {
+    private void addMeters(ReadingSink sink, SortedMap<String, Meter> meters) {
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            String metricName = entry.getKey();
+            Meter meter = entry.getValue();
+            int slot = deltaTracker.reportSlot(metricName);
+            long count = meter.getCount();
+            if (skipMetric(slot, count)) {
                 continue;
             }
-            addMeter(measures, metricName, meter);
+            addMeter(sink, plans.get(metricName), meter, slot, count);
         }
     }
 
-    private void addMeter(Measures measures, String metricName, Metered meter) {
-        Long countDelta = deltaTracker.getDelta(metricName, meter.getCount());
-        maybeAdd(measures, COUNT, metricName, countDelta);
-        maybeAdd(measures, RATE_MEAN, metricName, doConvertRate(meter.getMeanRate()));
-        maybeAdd(measures, RATE_1_MINUTE, metricName, doConvertRate(meter.getOneMinuteRate()));
-        maybeAdd(measures, RATE_5_MINUTE, metricName, doConvertRate(meter.getFiveMinuteRate()));
-        maybeAdd(measures, RATE_15_MINUTE, metricName, doConvertRate(meter.getFifteenMinuteRate()));
+    private void addMeter(ReadingSink sink, EmissionPlan plan, Metered meter, int slot, long count) {
+        maybeAdd(sink, plan, COUNT, deltaTracker.getDelta(slot, count));
+        if (!plan.rates || (cycleBudget != null && !cycleBudget.rates())) {
+            return;
+        }
+        // rates are only computed when reported, since each one reads and ticks the meter
+        if (plan.nameOf(RATE_MEAN) != null) {
+            maybeAdd(sink, plan, RATE_MEAN, doConvertRate(meter.getMeanRate()));
+        }
+        if (plan.nameOf(RATE_1_MINUTE) != null) {
+            maybeAdd(sink, plan, RATE_1_MINUTE, doConvertRate(meter.getOneMinuteRate()));
+        }
+        if (plan.nameOf(RATE_5_MINUTE) != null) {
+            maybeAdd(sink, plan, RATE_5_MINUTE, doConvertRate(meter.getFiveMinuteRate()));
+        }
+        if (plan.nameOf(RATE_15_MINUTE) != null) {
+            maybeAdd(sink, plan, RATE_15_MINUTE, doConvertRate(meter.getFifteenMinuteRate()));
+        }
     }
 
-    private void addTimers(Measures measures, SortedMap<String, Timer> timers) {
-        for (String metricName : timers.keySet()) {
-            Timer timer = timers.get(metricName);
-            if (skipMetric(metricName, timer)) {
+    private void addTimers(ReadingSink sink, SortedMap<String, Timer> timers) {
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String metricName = entry.getKey();
+            Timer timer = entry.getValue();
+            int slot = deltaTracker.reportSlot(metricName);
+            long count = timer.getCount();
+            if (skipMetric(slot, count)) {
                 continue;
             }
-            addMeter(measures, metricName, timer);
+            EmissionPlan plan = plans.get(metricName);
+            addMeter(sink, plan, timer, slot, count);
             final boolean convertDurations = true;
-            addSampling(measures, metricName, timer, convertDurations);
+            addSampling(sink, plan, timer, convertDurations);
         }
     }
 
-    private void addSampling(Measures measures, String name, Sampling sampling, boolean convert) {
+    private void addSampling(ReadingSink sink, EmissionPlan plan, Sampling sampling, boolean convert) {
+        if (!plan.percentiles && omitComplexGauges) {
+            // taking a snapshot copies and sorts the reservoir, so skip it when nothing reads it
+            return;
+        }
+        if (cycleBudget != null && !cycleBudget.percentiles()) {
+            // shed under load, along with the complex gauge that shares the snapshot
+            return;
+        }
         final Snapshot snapshot = sampling.getSnapshot();
-        maybeAdd(measures, MEDIAN, name, doConvertDuration(snapshot.getMedian(), convert));
-        maybeAdd(measures, PCT_75, name, doConvertDuration(snapshot.get75thPercentile(), convert));
-        maybeAdd(measures, PCT_95, name, doConvertDuration(snapshot.get95thPercentile(), convert));
-        maybeAdd(measures, PCT_98, name, doConvertDuration(snapshot.get98thPercentile(), convert));
-        maybeAdd(measures, PCT_99, name, doConvertDuration(snapshot.get99thPercentile(), convert));
-        maybeAdd(measures, PCT_999, name, doConvertDuration(snapshot.get999thPercentile(), convert));
+        maybeAdd(sink, plan, MEDIAN, doConvertDuration(snapshot.getMedian(), convert));
+        maybeAdd(sink, plan, PCT_75, doConvertDuration(snapshot.get75thPercentile(), convert));
+        maybeAdd(sink, plan, PCT_95, doConvertDuration(snapshot.get95thPercentile(), convert));
+        maybeAdd(sink, plan, PCT_98, doConvertDuration(snapshot.get98thPercentile(), convert));
+        maybeAdd(sink, plan, PCT_99, doConvertDuration(snapshot.get99thPercentile(), convert));
+        maybeAdd(sink, plan, PCT_999, doConvertDuration(snapshot.get999thPercentile(), convert));
         if (!omitComplexGauges) {
             final double sum = snapshot.size() * snapshot.getMean();
             final long count = (long) snapshot.size();
             if (count > 0) {
                 try {
-                    addAppopticsGauge(measures, convertToSignal(name),
+                    sink.add(plan,
                             doConvertDuration(sum, convert),
                             count,
                             doConvertDuration(snapshot.getMin(), convert),
@@ -202,33 +635,8 @@ public class AppopticsReporter extends ScheduledReporter implements RateConverte
         }
     }
 
-    private void addAppopticsGauge(Measures measures, Signal signal, double sum, long count, double min, double max) {
-        Measure gauge = new Measure(signal.name, sum, count, min, max);
-        addAppopticsGauge(measures, signal, gauge);
-    }
-
-    private void addAppopticsGauge(Measures measures, Signal signal, double value) {
-        Measure gauge = new Measure(signal.name, value);
-        addAppopticsGauge(measures, signal, gauge);
-    }
-
-    private void addAppopticsGauge(Measures measures, Signal signal, Measure gauge) {
-        for (Tag tag : signal.tags) {
-            gauge.addTag(tag);
-        }
-        if (!signal.overrideTags) {
-            for (Tag tag : tags) {
-                gauge.addTag(tag);
-            }
-        }
-        measures.add(gauge);
-    }
-
-    private String addPrefix(String metricName) {
-        if (prefix == null || prefix.length() == 0) {
-            return metricName;
-        }
-        return prefix + prefixDelimiter + metricName;
+    private void addAppopticsGauge(ReadingSink sink, EmissionPlan plan, double value) {
+        sink.add(plan, plan.name, value);
     }
 
     private String checkPrefix(String prefix) {
@@ -238,31 +646,20 @@ public class AppopticsReporter extends ScheduledReporter implements RateConverte
         return prefix;
     }
 
-    private void maybeAdd(Measures measures, ExpandedMetric expandedMetric, String name, Number reading) {
-        if (expansionConfig.isSet(expandedMetric)) {
-            if (!Numbers.isANumber(reading)) {
-                return;
-            }
-            Signal signal = convertToSignal(name, expandedMetric);
-            addAppopticsGauge(measures, signal, reading.doubleValue());
+    private void maybeAdd(ReadingSink sink, EmissionPlan plan, ExpandedMetric expandedMetric, double reading) {
+        String name = plan.nameOf(expandedMetric);
+        if (name == null || !Numbers.isANumber(reading)) {
+            return;
         }
+        sink.add(plan, name, reading);
     }
 
-    private Signal convertToSignal(String registryName) {
-        return convertToSignal(registryName, null);
-    }
-
-    private Signal convertToSignal(final String registryName, ExpandedMetric expandedMetric) {
-        Signal signal = Signal.decode(registryName);
-        if (expandedMetric != null) {
-            signal.name = expandedMetric.buildMetricName(signal.name);
+    private boolean skipMetric(int slot, long count) {
+        if (slot == DeltaTracker.NO_SLOT) {
+            // removed from the registry since the report took its snapshot
+            return true;
         }
-        signal.name = addPrefix(signal.name);
-        return signal;
-    }
-
-    private boolean skipMetric(String name, Counting counting) {
-        return deleteIdleStats() && deltaTracker.peekDelta(name, counting.getCount()) == 0;
+        return deleteIdleStats() && deltaTracker.peekDelta(slot, count) == 0;
     }
 
     private boolean deleteIdleStats() {
@@ -0,0 +1,122 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Measures;
+import com.appoptics.metrics.client.PostMeasuresResult;
+import com.appoptics.metrics.client.PostResult;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A slice of the measures of a report cycle that is posted on its own, so that a slow or failed
+ * post only costs its own measures. A batch holds either {@link Measures} for the client to
+ * serialize, or a payload that is already encoded.
+ */
+public class Batch {
+    final Measures measures;
+    final byte[] payload;
+    final int estimatedBytes;
+    final long deadlineNanos;
+    final boolean replay;
+    private final int size;
+    private volatile Future<PostMeasuresResult> result;
+    volatile long postNanos;
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} by which the report cycle that created
+     *                      the batch must be done, which bounds retries of the batch
+     */
+    public Batch(Measures measures, int estimatedBytes, long deadlineNanos) {
+        this.measures = measures;
+        this.payload = null;
+        this.estimatedBytes = estimatedBytes;
+        this.deadlineNanos = deadlineNanos;
+        this.replay = false;
+        this.size = measures.getMeasures().size();
+    }
+
+    /**
+     * @param deadlineNanos the {@link System#nanoTime()} by which the report cycle that created
+     *                      the batch must be done, which bounds retries of the batch
+     */
+    public Batch(byte[] payload, int size, long deadlineNanos) {
+        this(payload, size, deadlineNanos, false);
+    }
+
+    private Batch(byte[] payload, int size, long deadlineNanos, boolean replay) {
+        this.measures = null;
+        this.payload = payload;
+        this.estimatedBytes = payload.length;
+        this.deadlineNanos = deadlineNanos;
+        this.replay = replay;
+        this.size = size;
+    }
+
+    /**
+     * @return a batch of a payload that is replayed from a {@link MeasuresSpool} and stays at
+     * its head until the post succeeds
+     */
+    static Batch replay(byte[] payload, long deadlineNanos) {
+        return new Batch(payload, 0, deadlineNanos, true);
+    }
+
+    /**
+     * @return the measures, or null if the batch holds an encoded payload
+     */
+    public Measures getMeasures() {
+        return measures;
+    }
+
+    /**
+     * @return the encoded payload, or null if the batch holds measures
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    void setResult(Future<PostMeasuresResult> result) {
+        this.result = result;
+    }
+
+    /**
+     * Waits for the batch to be posted.
+     *
+     * @return the results of the post; a post that threw or was dropped is reported as a failed result
+     */
+    public PostMeasuresResult await() throws InterruptedException {
+        try {
+            return result.get();
+        } catch (CancellationException e) {
+            return failure(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            return failure(cause instanceof Exception ? (Exception) cause : e);
+        }
+    }
+
+    static PostMeasuresResult result(PostResult postResult) {
+        PostMeasuresResult result = new PostMeasuresResult();
+        result.results.add(postResult);
+        return result;
+    }
+
+    /**
+     * @return a failed result for a batch that was dropped before it was posted, carrying its
+     * payload so that it can be spooled
+     */
+    static PostMeasuresResult dropped(Batch batch) {
+        return result(new PostResult(false, batch.payload,
+                new CancellationException("Batch was dropped from the posting queue")));
+    }
+
+    static PostMeasuresResult failure(Exception e) {
+        PostMeasuresResult failure = new PostMeasuresResult();
+        failure.results.add(new PostResult(false, null, e));
+        return failure;
+    }
+}
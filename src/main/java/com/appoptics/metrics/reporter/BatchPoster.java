@@ -0,0 +1,129 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.AppopticsClient;
+import com.appoptics.metrics.client.PostMeasuresResult;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Posts batches through the client, or through a {@link PayloadPoster} for batches that are
+ * already encoded, and passes each result to a {@link ResultHandler}.
+ * <p>
+ * Without a {@link PostingQueue}, the number of posts in flight is bounded: with a single post
+ * in flight, batches are posted on the calling thread; otherwise they are posted on a pool and
+ * submitting blocks while the limit is reached. With a posting queue, submitting only queues the
+ * batch and the queue's own threads post it, and a batch the queue drops is handled as a failed
+ * post. Failed posts are retried by an optional {@link PostRetrier} before their results are
+ * handled.
+ */
+public class BatchPoster {
+    private final AppopticsClient client;
+    private final PayloadPoster payloadPoster;
+    private final ResultHandler handler;
+    private final PostingQueue queue;
+    private final Semaphore inflight;
+    private final ExecutorService executor;
+    private final PostRetrier retrier;
+
+    public interface ResultHandler {
+        void handle(Batch batch, PostMeasuresResult result);
+    }
+
+    public BatchPoster(AppopticsClient client,
+                       PayloadPoster payloadPoster,
+                       int maxInflight,
+                       PostingQueue queue,
+                       PostRetrier retrier,
+                       ResultHandler handler,
+                       String name) {
+        this.client = client;
+        this.payloadPoster = payloadPoster;
+        this.retrier = retrier;
+        this.handler = handler;
+        this.queue = queue;
+        this.inflight = new Semaphore(maxInflight);
+        this.executor = queue == null && maxInflight > 1
+                ? Executors.newFixedThreadPool(maxInflight, new DaemonThreadFactory(name + "-post"))
+                : null;
+    }
+
+    /**
+     * @return true if batches are posted in the background and need not be awaited
+     */
+    public boolean isAsync() {
+        return queue != null;
+    }
+
+    public void submit(final Batch batch) throws InterruptedException {
+        if (queue != null) {
+            FutureTask<PostMeasuresResult> task = newTask(batch, false);
+            batch.setResult(task);
+            queue.enqueue(batch, task);
+            return;
+        }
+        inflight.acquire();
+        FutureTask<PostMeasuresResult> task = newTask(batch, true);
+        batch.setResult(task);
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RuntimeException e) {
+            inflight.release();
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    private FutureTask<PostMeasuresResult> newTask(final Batch batch, final boolean releasePermit) {
+        return new FutureTask<PostMeasuresResult>(newCallable(batch, releasePermit)) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    handler.handle(batch, Batch.dropped(batch));
+                }
+            }
+        };
+    }
+
+    private Callable<PostMeasuresResult> newCallable(final Batch batch, final boolean releasePermit) {
+        return new Callable<PostMeasuresResult>() {
+            @Override
+            public PostMeasuresResult call() throws Exception {
+                try {
+                    long start = System.nanoTime();
+                    PostMeasuresResult result = batch.payload != null
+                            ? Batch.result(payloadPoster.post(batch.payload))
+                            : client.postMeasures(batch.measures);
+                    batch.postNanos = System.nanoTime() - start;
+                    if (retrier != null) {
+                        result = retrier.retry(batch, result);
+                    }
+                    handler.handle(batch, result);
+                    return result;
+                } catch (RuntimeException e) {
+                    handler.handle(batch, Batch.failure(e));
+                    throw e;
+                } finally {
+                    if (releasePermit) {
+                        inflight.release();
+                    }
+                }
+            }
+        };
+    }
+}
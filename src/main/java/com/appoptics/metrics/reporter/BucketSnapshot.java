@@ -0,0 +1,141 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+/**
+ * A {@link Snapshot} of the bucket counts of a {@link LogLinearHistogram}. Each recorded value is
+ * represented by the middle of its bucket, so the statistics are within the precision of the
+ * histogram. Only the non-empty buckets are kept.
+ */
+public class BucketSnapshot extends Snapshot {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final long[] values;
+    private final long[] cumulativeCounts;
+    private final long count;
+
+    BucketSnapshot(LogLinearHistogram histogram, long[] bucketCounts) {
+        int buckets = 0;
+        for (long bucketCount : bucketCounts) {
+            if (bucketCount > 0) {
+                buckets++;
+            }
+        }
+        this.values = new long[buckets];
+        this.cumulativeCounts = new long[buckets];
+        long total = 0;
+        int bucket = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            if (bucketCounts[i] > 0) {
+                total += bucketCounts[i];
+                values[bucket] = histogram.valueAt(i);
+                cumulativeCounts[bucket] = total;
+                bucket++;
+            }
+        }
+        this.count = total;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        int low = 0;
+        int high = values.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeCounts[mid] < rank) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return values[low];
+    }
+
+    /**
+     * @return every recorded value as the middle of its bucket; this allocates one long per recorded value
+     */
+    @Override
+    public long[] getValues() {
+        long[] all = new long[size()];
+        int next = 0;
+        long previous = 0;
+        for (int bucket = 0; bucket < values.length && next < all.length; bucket++) {
+            for (long i = previous; i < cumulativeCounts[bucket] && next < all.length; i++) {
+                all[next++] = values[bucket];
+            }
+            previous = cumulativeCounts[bucket];
+        }
+        return all;
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getMax() {
+        return values.length == 0 ? 0 : values[values.length - 1];
+    }
+
+    @Override
+    public double getMean() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        long previous = 0;
+        for (int bucket = 0; bucket < values.length; bucket++) {
+            sum += (double) values[bucket] * (cumulativeCounts[bucket] - previous);
+            previous = cumulativeCounts[bucket];
+        }
+        return sum / count;
+    }
+
+    @Override
+    public long getMin() {
+        return values.length == 0 ? 0 : values[0];
+    }
+
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0;
+        }
+        double mean = getMean();
+        double sumOfSquares = 0;
+        long previous = 0;
+        for (int bucket = 0; bucket < values.length; bucket++) {
+            double diff = values[bucket] - mean;
+            sumOfSquares += diff * diff * (cumulativeCounts[bucket] - previous);
+            previous = cumulativeCounts[bucket];
+        }
+        return Math.sqrt(sumOfSquares / (count - 1));
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(output, UTF_8));
+        try {
+            for (long value : getValues()) {
+                out.printf("%d%n", value);
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
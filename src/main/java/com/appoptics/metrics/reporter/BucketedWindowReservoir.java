@@ -0,0 +1,116 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Reservoir} of the values recorded within a sliding time window, kept as a ring of
+ * {@link LogLinearHistogram}s, one per sub-interval of the window. Snapshots merge the buckets
+ * that are still inside the window. Unlike {@link com.codahale.metrics.SlidingTimeWindowArrayReservoir},
+ * the memory used is fixed no matter how many values are recorded: one histogram per
+ * sub-interval, about 54KB per metric with the default six sub-intervals and histogram size.
+ * <p>
+ * The window moves in steps of one sub-interval, and a value recorded at the very moment its
+ * bucket is recycled may be dropped.
+ */
+public class BucketedWindowReservoir implements Reservoir {
+    public static final int DEFAULT_BUCKETS = 6;
+    private static final long UNUSED = Long.MIN_VALUE;
+    private final Clock clock;
+    private final int bucketCount;
+    private final LogLinearHistogram[] buckets;
+    // the sub-interval each bucket currently holds
+    private final AtomicLongArray ticks;
+    private volatile long bucketNanos;
+
+    /**
+     * @return a supplier for {@link Appoptics#reservoir(Supplier)}
+     */
+    public static Supplier<Reservoir> supplier(final long window, final TimeUnit unit) {
+        return new Supplier<Reservoir>() {
+            @Override
+            public Reservoir get() {
+                return new BucketedWindowReservoir(window, unit);
+            }
+        };
+    }
+
+    public BucketedWindowReservoir(long window, TimeUnit unit) {
+        this(window, unit, DEFAULT_BUCKETS, new LogLinearHistogram(), Clock.defaultClock());
+    }
+
+    /**
+     * @param bucketCount the number of sub-intervals the window is split into
+     * @param histogram   a histogram whose buckets and range each sub-interval uses
+     */
+    public BucketedWindowReservoir(long window, TimeUnit unit, int bucketCount, LogLinearHistogram histogram, Clock clock) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket count must be at least 1: " + bucketCount);
+        }
+        this.clock = clock;
+        this.bucketCount = bucketCount;
+        this.buckets = new LogLinearHistogram[bucketCount];
+        this.ticks = new AtomicLongArray(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = histogram.emptyCopy();
+            ticks.set(i, UNUSED);
+        }
+        setWindow(window, unit);
+    }
+
+    /**
+     * Changes the length of the window, discarding the values recorded so far.
+     */
+    public synchronized void setWindow(long window, TimeUnit unit) {
+        long nanos = unit.toNanos(window);
+        if (nanos < bucketCount) {
+            throw new IllegalArgumentException("Window is too short: " + window + " " + unit);
+        }
+        for (int i = 0; i < bucketCount; i++) {
+            ticks.set(i, UNUSED);
+            buckets[i].reset();
+        }
+        this.bucketNanos = nanos / bucketCount;
+    }
+
+    @Override
+    public int size() {
+        return getSnapshot().size();
+    }
+
+    @Override
+    public void update(long value) {
+        long tick = clock.getTick() / bucketNanos;
+        // ticks may be negative, as System.nanoTime() may be
+        int index = (int) (((tick % bucketCount) + bucketCount) % bucketCount);
+        if (ticks.get(index) != tick) {
+            recycle(index, tick);
+        }
+        buckets[index].record(value);
+    }
+
+    private synchronized void recycle(int index, long tick) {
+        long current = ticks.get(index);
+        if (current < tick) {
+            buckets[index].reset();
+            ticks.set(index, tick);
+        }
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        long tick = clock.getTick() / bucketNanos;
+        long[] counts = new long[buckets[0].bucketCount()];
+        for (int i = 0; i < bucketCount; i++) {
+            long bucketTick = ticks.get(i);
+            if (bucketTick != UNUSED && bucketTick > tick - bucketCount && bucketTick <= tick) {
+                buckets[i].drainTo(counts, false);
+            }
+        }
+        return buckets[0].snapshot(counts);
+    }
+}
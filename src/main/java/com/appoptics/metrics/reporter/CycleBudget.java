@@ -0,0 +1,142 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A time budget for report cycles, with a ladder of degradations for when cycles overrun it.
+ * <p>
+ * Within a cycle, percentiles (and the reservoir snapshots they need) are shed once half the
+ * budget is spent, and rates once three quarters are. Across cycles, each cycle that overruns the
+ * budget moves one step down the ladder: no percentiles, then no rates, then reporting only every
+ * 2nd, 4th and at most 8th cycle. Counts and gauges are always reported, and since counts are
+ * deltas, skipped cycles lose nothing. Every {@value #RECOVERY_CYCLES} consecutive cycles that
+ * take less than half the budget move one step back up, so that a load that alternates fast and
+ * slow cycles settles on a step instead of flapping between two.
+ */
+public class CycleBudget {
+    private static final Logger log = LoggerFactory.getLogger(CycleBudget.class);
+    static final int FULL = 0;
+    static final int NO_PERCENTILES = 1;
+    static final int NO_RATES = 2;
+    private static final int MAX_INTERVAL = 8;
+    static final int MAX_LEVEL = NO_RATES + Integer.numberOfTrailingZeros(MAX_INTERVAL);
+    static final int RECOVERY_CYCLES = 3;
+    private final long budgetNanos;
+    private final Clock clock;
+    private final Counter degradations = new Counter();
+    private final Counter recoveries = new Counter();
+    private final Counter skippedCycles = new Counter();
+    private volatile int level = FULL;
+    private volatile long cycleStart;
+    private int ticks;
+    private int fastCycles;
+
+    public CycleBudget(long budget, TimeUnit unit) {
+        this(budget, unit, Clock.defaultClock());
+    }
+
+    public CycleBudget(long budget, TimeUnit unit, Clock clock) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Cycle budget must be positive: " + budget);
+        }
+        this.budgetNanos = unit.toNanos(budget);
+        this.clock = clock;
+    }
+
+    /**
+     * Called when the reporter is scheduled.
+     *
+     * @return false if the cycle is to be skipped, because the interval has been widened
+     */
+    boolean startCycle() {
+        if (++ticks < interval()) {
+            skippedCycles.inc();
+            return false;
+        }
+        ticks = 0;
+        cycleStart = clock.getTick();
+        return true;
+    }
+
+    /**
+     * Moves down the ladder if the cycle overran the budget, or up if it was the last of enough
+     * consecutive fast cycles.
+     */
+    void endCycle() {
+        long elapsed = clock.getTick() - cycleStart;
+        if (elapsed >= budgetNanos / 2) {
+            fastCycles = 0;
+        } else if (level > FULL) {
+            fastCycles++;
+        }
+        if (elapsed > budgetNanos) {
+            if (level < MAX_LEVEL) {
+                level++;
+                degradations.inc();
+                log.warn("Report took {}ms, over its budget of {}ms, degrading to {}",
+                        TimeUnit.NANOSECONDS.toMillis(elapsed), TimeUnit.NANOSECONDS.toMillis(budgetNanos), describe(level));
+            }
+        } else if (fastCycles >= RECOVERY_CYCLES) {
+            fastCycles = 0;
+            level--;
+            recoveries.inc();
+            log.info("Report took {}ms, recovering to {}", TimeUnit.NANOSECONDS.toMillis(elapsed), describe(level));
+        }
+    }
+
+    /**
+     * @return whether percentiles are to be reported at this point of the cycle
+     */
+    boolean percentiles() {
+        return level == FULL && clock.getTick() - cycleStart < budgetNanos / 2;
+    }
+
+    /**
+     * @return whether rates are to be reported at this point of the cycle
+     */
+    boolean rates() {
+        return level <= NO_PERCENTILES && clock.getTick() - cycleStart < budgetNanos / 4 * 3;
+    }
+
+    /**
+     * @return the number of scheduled cycles per report, 1 unless the interval has been widened
+     */
+    int interval() {
+        int current = level;
+        return current <= NO_RATES ? 1 : 1 << (current - NO_RATES);
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    private static String describe(int level) {
+        switch (level) {
+            case FULL:
+                return "reporting everything";
+            case NO_PERCENTILES:
+                return "reporting no percentiles";
+            case NO_RATES:
+                return "reporting no percentiles or rates";
+            default:
+                return "reporting every " + (1 << (level - NO_RATES)) + " cycles";
+        }
+    }
+
+    public Counter getDegradations() {
+        return degradations;
+    }
+
+    public Counter getRecoveries() {
+        return recoveries;
+    }
+
+    public Counter getSkippedCycles() {
+        return skippedCycles;
+    }
+}
@@ -7,6 +7,7 @@ public class DefaultAppopticsClientFactory implements IAppopticsClientFactory {
     public AppopticsClient build(ReporterAttributes atts) {
         AppopticsClientBuilder builder = AppopticsClient.builder(atts.token)
                 .setURI(atts.url)
+                .setBatchSize(atts.maxBatchMeasures)
                 .setAgentIdentifier(Agent.AGENT_IDENTIFIER);
         if (atts.readTimeout != null) {
             builder.setReadTimeout(atts.readTimeout);
@@ -14,9 +15,7 @@ public class DefaultAppopticsClientFactory implements IAppopticsClientFactory {
         if (atts.connectTimeout != null) {
             builder.setConnectTimeout(atts.connectTimeout);
         }
-        if (atts.poster != null) {
-            builder.setPoster(atts.poster);
-        }
+        builder.setPoster(atts.resolvePoster());
         return builder.build();
     }
 }
@@ -1,22 +1,52 @@
 package com.appoptics.metrics.reporter;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metered;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Tracks the last named value.
+ * <p>
+ * Each tracked name is given a compact slot id, and the last count for the slot is stored in a
+ * primitive long array, so no boxing happens when reading deltas by slot. Slots are assigned when
+ * counted metrics are added to the registry (or lazily on first use) and freed when the registry
+ * reports them as removed. Peeking never assigns a slot, and {@link #reportSlot(String)} does not
+ * assign one to a name removed since the previous cycle started, so a report that reaches a metric
+ * after its removal cannot leave behind a slot that is never freed. Freed slots are only recycled
+ * after {@link #reclaim()}, which the reporter calls at the start of a cycle, so a cycle never
+ * writes into a slot that has already been handed to another metric.
  */
-public class DeltaTracker {
+public class DeltaTracker extends MetricRemovalListener {
     private static final Logger LOG = LoggerFactory.getLogger(DeltaTracker.class);
-    private final ConcurrentMap<String, Long> lookup = new ConcurrentHashMap<String, Long>();
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // rough per-name cost of the concurrent map entry and the boxed slot id
+    private static final int BYTES_PER_NAME = 64;
+    private static final long UNSET = Long.MIN_VALUE;
+    /**
+     * Returned for names that have no slot.
+     */
+    public static final int NO_SLOT = -1;
+    private final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    private final Object allocationLock = new Object();
+    private final List<Integer> freed = new ArrayList<Integer>();
+    private final List<Integer> reusable = new ArrayList<Integer>();
+    private final RecentRemovals removals = new RecentRemovals();
+    private volatile long[][] pages = new long[0][];
+    private int nextSlot;
 
     public interface MetricSupplier {
         Map<String, Metric> getMetrics();
@@ -35,10 +65,10 @@ public class DeltaTracker {
             final String name = entry.getKey();
             final Metric metric = entry.getValue();
             if (metric instanceof Metered) {
-                lookup.put(name, ((Metered) metric).getCount());
+                set(slot(name), ((Metered) metric).getCount());
             }
             if (metric instanceof Histogram) {
-                lookup.put(name, ((Histogram) metric).getCount());
+                set(slot(name), ((Histogram) metric).getCount());
             }
         }
     }
@@ -47,8 +77,8 @@ public class DeltaTracker {
      * Gets the delta without updating the internal data store
      */
     public Long peekDelta(String name, long count) {
-        Long previous = lookup.get(name);
-        return calculateDelta(name, previous, count);
+        int slot = slotOf(name);
+        return calculateDelta(name, slot != NO_SLOT ? get(slot) : UNSET, count);
     }
 
     /**
@@ -60,15 +90,155 @@ public class DeltaTracker {
      * @return the delta
      */
     public Long getDelta(String name, long count) {
-        Long previous = lookup.put(name, count);
+        int slot = slot(name);
+        long previous = get(slot);
+        set(slot, count);
         return calculateDelta(name, previous, count);
     }
 
-    private Long calculateDelta(String name, Long previous, long count) {
-        if (previous == null) {
+    /**
+     * Gets the delta for a slot without updating the internal data store
+     */
+    public long peekDelta(int slot, long count) {
+        return calculateDelta(slot, get(slot), count);
+    }
+
+    /**
+     * Calculates the delta for a slot and stores the supplied count.
+     *
+     * @param slot  the slot of the counter, see {@link #reportSlot(String)}
+     * @param count the counter value
+     * @return the delta
+     */
+    public long getDelta(int slot, long count) {
+        long previous = get(slot);
+        set(slot, count);
+        return calculateDelta(slot, previous, count);
+    }
+
+    /**
+     * @return the slot tracking the named counter, or {@link #NO_SLOT} if it has none, e.g.
+     * because it was removed from the registry
+     */
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot != null ? slot : NO_SLOT;
+    }
+
+    /**
+     * @return the slot tracking the named counter, assigning one if there is none yet unless the
+     * name was removed from the registry since the previous cycle started, in which case it is
+     * {@link #NO_SLOT}
+     */
+    public int reportSlot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        if (removals.contains(name)) {
+            return NO_SLOT;
+        }
+        return slot(name);
+    }
+
+    /**
+     * @return the slot tracking the named counter, assigning one if there is none yet
+     */
+    public int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        synchronized (allocationLock) {
+            slot = slots.get(name);
+            if (slot == null) {
+                slot = allocate();
+                set(slot, UNSET);
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Makes the slots of removed metrics available for reuse.
+     */
+    public void reclaim() {
+        synchronized (allocationLock) {
+            reusable.addAll(freed);
+            freed.clear();
+        }
+        removals.rotate();
+    }
+
+    /**
+     * @return the number of tracked names
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * @return the approximate number of bytes used to track counts
+     */
+    public long getFootprint() {
+        return (long) pages.length * PAGE_SIZE * 8 + (long) slots.size() * BYTES_PER_NAME;
+    }
+
+    @Override
+    public void onHistogramAdded(String name, Histogram histogram) {
+        slot(name);
+    }
+
+    @Override
+    public void onMeterAdded(String name, Meter meter) {
+        slot(name);
+    }
+
+    @Override
+    public void onTimerAdded(String name, Timer timer) {
+        slot(name);
+    }
+
+    @Override
+    protected void onMetricRemoved(String name) {
+        removals.add(name);
+        synchronized (allocationLock) {
+            Integer slot = slots.remove(name);
+            if (slot != null) {
+                freed.add(slot);
+            }
+        }
+    }
+
+    private int allocate() {
+        if (!reusable.isEmpty()) {
+            return reusable.remove(reusable.size() - 1);
+        }
+        int slot = nextSlot++;
+        int page = slot >>> PAGE_SHIFT;
+        if (page >= pages.length) {
+            // pages never move, so concurrent writes to existing slots are not lost
+            long[][] grown = Arrays.copyOf(pages, page + 1);
+            grown[page] = new long[PAGE_SIZE];
+            pages = grown;
+        }
+        return slot;
+    }
+
+    private long get(int slot) {
+        return pages[slot >>> PAGE_SHIFT][slot & PAGE_MASK];
+    }
+
+    private void set(int slot, long count) {
+        pages[slot >>> PAGE_SHIFT][slot & PAGE_MASK] = count;
+    }
+
+    private long calculateDelta(Object metric, long previous, long count) {
+        if (previous == UNSET) {
             previous = 0L;
         } else if (count < previous) {
-            LOG.debug("Saw a non-monotonically increasing value for metric {}", name);
+            LOG.debug("Saw a non-monotonically increasing value for metric {}", metric);
             previous = 0L;
         }
         return count - previous;
@@ -0,0 +1,158 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * The precompiled wire form of a single registry metric: the final measure names for the metric
+ * itself and for each enabled {@link ExpandedMetric}, and the tags that go on every measure.
+ * Plans are immutable and built once per metric, so the report loop only has to read values.
+ */
+public class EmissionPlan {
+    private static final ExpandedMetric[] EXPANDED_METRICS = ExpandedMetric.values();
+    private static final EnumSet<ExpandedMetric> PERCENTILES =
+            EnumSet.range(ExpandedMetric.MEDIAN, ExpandedMetric.PCT_999);
+    private static final EnumSet<ExpandedMetric> RATES =
+            EnumSet.range(ExpandedMetric.RATE_MEAN, ExpandedMetric.RATE_15_MINUTE);
+    final String name;
+    final Tag[] tags;
+    final int estimatedTagBytes;
+    final SerializedString encodedName;
+    final SerializedString encodedTags;
+    /**
+     * Whether any percentile is reported, i.e. whether a snapshot is needed for them
+     */
+    final boolean percentiles;
+    /**
+     * Whether any rate is reported
+     */
+    final boolean rates;
+    private final String[] expandedNames;
+    private final SerializedString[] encodedExpandedNames;
+
+    EmissionPlan(String name, Tag[] tags, String[] expandedNames) {
+        this.name = name;
+        this.tags = tags;
+        this.expandedNames = expandedNames;
+        this.estimatedTagBytes = estimateEncodedSize(tags);
+        this.encodedName = PayloadEncoder.encodeName(name);
+        this.encodedTags = PayloadEncoder.encodeTags(tags);
+        this.percentiles = reportsAny(expandedNames, PERCENTILES);
+        this.rates = reportsAny(expandedNames, RATES);
+        this.encodedExpandedNames = new SerializedString[expandedNames.length];
+        for (int i = 0; i < expandedNames.length; i++) {
+            if (expandedNames[i] != null) {
+                encodedExpandedNames[i] = PayloadEncoder.encodeName(expandedNames[i]);
+            }
+        }
+    }
+
+    /**
+     * Compiles the plan for a registry name.
+     *
+     * @param registryName    the (possibly JSON-encoded) name the metric is registered under
+     * @param prefix          the reporter prefix, may be null
+     * @param prefixDelimiter the delimiter between prefix and name
+     * @param expansionConfig the expanded metrics to build names for
+     * @param reporterTags    the reporter-level tags, added unless the signal overrides them
+     */
+    public static EmissionPlan compile(String registryName,
+                                       String prefix,
+                                       String prefixDelimiter,
+                                       MetricExpansionConfig expansionConfig,
+                                       List<Tag> reporterTags) {
+        return compile(registryName, prefix, prefixDelimiter, expansionConfig,
+                Collections.<ExpansionRule>emptyList(), reporterTags);
+    }
+
+    /**
+     * Compiles the plan for a registry name, with the expanded metrics of the first matching rule.
+     *
+     * @param expansionConfig the expanded metrics to build names for if no rule matches
+     * @param expansionRules  the ordered rules that override the expansion config
+     */
+    public static EmissionPlan compile(String registryName,
+                                       String prefix,
+                                       String prefixDelimiter,
+                                       MetricExpansionConfig expansionConfig,
+                                       List<ExpansionRule> expansionRules,
+                                       List<Tag> reporterTags) {
+        Signal signal = Signal.decode(registryName);
+        for (ExpansionRule rule : expansionRules) {
+            if (rule.matches(signal)) {
+                expansionConfig = rule.getConfig();
+                break;
+            }
+        }
+        String[] expandedNames = new String[EXPANDED_METRICS.length];
+        for (ExpandedMetric expandedMetric : EXPANDED_METRICS) {
+            if (expansionConfig.isSet(expandedMetric)) {
+                expandedNames[expandedMetric.ordinal()] =
+                        addPrefix(prefix, prefixDelimiter, expandedMetric.buildMetricName(signal.name));
+            }
+        }
+        List<Tag> tags = new ArrayList<Tag>(signal.tags);
+        if (!signal.overrideTags) {
+            tags.addAll(reporterTags);
+        }
+        return new EmissionPlan(
+                addPrefix(prefix, prefixDelimiter, signal.name),
+                tags.toArray(new Tag[tags.size()]),
+                expandedNames);
+    }
+
+    /**
+     * @return the measure name for the expanded metric, or null if it is not to be reported
+     */
+    public String nameOf(ExpandedMetric expandedMetric) {
+        return expandedNames[expandedMetric.ordinal()];
+    }
+
+    /**
+     * @return the encoded form of a name of this plan, i.e. the plan name or one of its expanded names
+     */
+    SerializedString encodedNameOf(String measureName) {
+        if (measureName == name) {
+            return encodedName;
+        }
+        for (int i = 0; i < expandedNames.length; i++) {
+            if (measureName == expandedNames[i]) {
+                return encodedExpandedNames[i];
+            }
+        }
+        return PayloadEncoder.encodeName(measureName);
+    }
+
+    private static boolean reportsAny(String[] expandedNames, EnumSet<ExpandedMetric> expandedMetrics) {
+        for (ExpandedMetric expandedMetric : expandedMetrics) {
+            if (expandedNames[expandedMetric.ordinal()] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int estimateEncodedSize(Tag[] tags) {
+        if (tags.length == 0) {
+            return 0;
+        }
+        // "tags":{} plus "name":"value", for each tag
+        int size = 9;
+        for (Tag tag : tags) {
+            size += tag.name.length() + tag.value.length() + 6;
+        }
+        return size;
+    }
+
+    private static String addPrefix(String prefix, String prefixDelimiter, String metricName) {
+        if (prefix == null || prefix.length() == 0) {
+            return metricName;
+        }
+        return prefix + prefixDelimiter + metricName;
+    }
+}
@@ -0,0 +1,85 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiles and caches an {@link EmissionPlan} per registry name, so expansion rules are matched
+ * once per metric rather than on every report. Plans are dropped when the
+ * registry reports the metric as removed. A report that reaches a metric removed since the
+ * previous cycle started gets a plan that is not cached, since no later removal would drop it.
+ */
+public class EmissionPlans extends MetricRemovalListener {
+    private final ConcurrentMap<String, EmissionPlan> plans = new ConcurrentHashMap<String, EmissionPlan>();
+    private final String prefix;
+    private final String prefixDelimiter;
+    private final MetricExpansionConfig expansionConfig;
+    private final List<ExpansionRule> expansionRules;
+    private final List<Tag> reporterTags;
+    private final RecentRemovals removals = new RecentRemovals();
+
+    public EmissionPlans(String prefix,
+                         String prefixDelimiter,
+                         MetricExpansionConfig expansionConfig,
+                         List<Tag> reporterTags) {
+        this(prefix, prefixDelimiter, expansionConfig, Collections.<ExpansionRule>emptyList(), reporterTags);
+    }
+
+    public EmissionPlans(String prefix,
+                         String prefixDelimiter,
+                         MetricExpansionConfig expansionConfig,
+                         List<ExpansionRule> expansionRules,
+                         List<Tag> reporterTags) {
+        this.prefix = prefix;
+        this.prefixDelimiter = prefixDelimiter;
+        this.expansionConfig = expansionConfig;
+        this.expansionRules = new ArrayList<ExpansionRule>(expansionRules);
+        this.reporterTags = new ArrayList<Tag>(reporterTags);
+    }
+
+    public EmissionPlan get(String registryName) {
+        EmissionPlan plan = plans.get(registryName);
+        if (plan != null) {
+            return plan;
+        }
+        plan = EmissionPlan.compile(registryName, prefix, prefixDelimiter, expansionConfig, expansionRules, reporterTags);
+        if (removals.contains(registryName)) {
+            return plan;
+        }
+        EmissionPlan existing = plans.putIfAbsent(registryName, plan);
+        if (existing != null) {
+            return existing;
+        }
+        // the metric may have been removed while the plan was being cached
+        if (removals.contains(registryName)) {
+            plans.remove(registryName, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Forgets the metrics removed before the previous cycle started; called at the start of a cycle.
+     */
+    public void cycleStarted() {
+        removals.rotate();
+    }
+
+    public void evict(String registryName) {
+        plans.remove(registryName);
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    @Override
+    protected void onMetricRemoved(String name) {
+        removals.add(name);
+        evict(name);
+    }
+}
@@ -0,0 +1,65 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+
+import java.util.regex.Pattern;
+
+/**
+ * Overrides the {@link MetricExpansionConfig} for metrics whose name, or the value of one of whose
+ * tags, matches a pattern. Rules are checked in the order they were added to the
+ * {@link ReporterBuilder} and the first match wins; metrics no rule matches use the reporter's
+ * expansion config. A metric is matched once, when its {@link EmissionPlan} is compiled.
+ */
+public class ExpansionRule {
+    private final Pattern namePattern;
+    private final String tagName;
+    private final Pattern tagValuePattern;
+    private final MetricExpansionConfig config;
+
+    private ExpansionRule(Pattern namePattern, String tagName, Pattern tagValuePattern, MetricExpansionConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Expansion config must be specified");
+        }
+        this.namePattern = namePattern;
+        this.tagName = tagName;
+        this.tagValuePattern = tagValuePattern;
+        this.config = config;
+    }
+
+    /**
+     * @param namePattern matched against the whole metric name, without the reporter prefix
+     */
+    public static ExpansionRule forName(Pattern namePattern, MetricExpansionConfig config) {
+        if (namePattern == null) {
+            throw new IllegalArgumentException("Name pattern must be specified");
+        }
+        return new ExpansionRule(namePattern, null, null, config);
+    }
+
+    /**
+     * @param tagName         the name of a tag of the metric itself, reporter tags are not matched
+     * @param tagValuePattern matched against the whole tag value
+     */
+    public static ExpansionRule forTag(String tagName, Pattern tagValuePattern, MetricExpansionConfig config) {
+        if (tagName == null || tagValuePattern == null) {
+            throw new IllegalArgumentException("Tag name and value pattern must be specified");
+        }
+        return new ExpansionRule(null, tagName, tagValuePattern, config);
+    }
+
+    public boolean matches(Signal signal) {
+        if (namePattern != null) {
+            return namePattern.matcher(signal.name).matches();
+        }
+        for (Tag tag : signal.tags) {
+            if (tagName.equals(tag.name) && tagValuePattern.matcher(tag.value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public MetricExpansionConfig getConfig() {
+        return config;
+    }
+}
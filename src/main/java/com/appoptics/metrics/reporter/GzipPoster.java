@@ -0,0 +1,150 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+import com.codahale.metrics.Counter;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An {@link IPoster} that gzips request bodies before handing them to another poster. Bodies
+ * smaller than a threshold are posted as they are, since compressing them costs more than it
+ * saves. {@link Deflater}s are pooled, as they hold native memory and are costly to create.
+ */
+public class GzipPoster implements IPoster {
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_BYTES = 8;
+    private static final int MAX_POOLED_DEFLATERS = 16;
+    private final IPoster delegate;
+    private final int level;
+    private final int minBytes;
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+    private final Counter compressed = new Counter();
+    private final Counter skipped = new Counter();
+    private final Counter bytesIn = new Counter();
+    private final Counter bytesOut = new Counter();
+    private final Counter compressionNanos = new Counter();
+
+    /**
+     * @param delegate the poster that sends the compressed bodies
+     * @param level    the {@link Deflater} compression level, from 0 to 9, or -1 for the default
+     * @param minBytes bodies smaller than this are not compressed
+     */
+    public GzipPoster(IPoster delegate, int level, int minBytes) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9: " + level);
+        }
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("Compression threshold may not be negative: " + minBytes);
+        }
+        this.delegate = delegate;
+        this.level = level;
+        this.minBytes = minBytes;
+    }
+
+    @Override
+    public HttpResponse post(String url,
+                             Duration connectTimeout,
+                             Duration readTimeout,
+                             Map<String, String> headers,
+                             byte[] payload) {
+        if (payload.length < minBytes) {
+            skipped.inc();
+            return delegate.post(url, connectTimeout, readTimeout, headers, payload);
+        }
+        Map<String, String> gzipHeaders = new HashMap<String, String>(headers);
+        gzipHeaders.put("Content-Encoding", "gzip");
+        return delegate.post(url, connectTimeout, readTimeout, gzipHeaders, compress(payload));
+    }
+
+    byte[] compress(byte[] payload) {
+        long start = cpuTime();
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        byte[] gzipped;
+        try {
+            gzipped = gzip(deflater, payload);
+        } finally {
+            deflater.reset();
+            if (deflaters.size() < MAX_POOLED_DEFLATERS) {
+                deflaters.offer(deflater);
+            } else {
+                deflater.end();
+            }
+        }
+        compressionNanos.inc(cpuTime() - start);
+        compressed.inc();
+        bytesIn.inc(payload.length);
+        bytesOut.inc(gzipped.length);
+        return gzipped;
+    }
+
+    private static byte[] gzip(Deflater deflater, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + GZIP_HEADER.length + GZIP_TRAILER_BYTES);
+        out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        deflater.setInput(payload);
+        deflater.finish();
+        byte[] chunk = new byte[Math.min(8192, Math.max(64, payload.length))];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        writeIntLE(out, (int) crc.getValue());
+        writeIntLE(out, payload.length);
+        return out.toByteArray();
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private long cpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * @return the number of bodies that were compressed
+     */
+    public long getCompressed() {
+        return compressed.getCount();
+    }
+
+    /**
+     * @return the number of bodies that were posted uncompressed because they were below the threshold
+     */
+    public long getSkipped() {
+        return skipped.getCount();
+    }
+
+    /**
+     * @return the compressed size of all compressed bodies divided by their original size
+     */
+    public double getCompressionRatio() {
+        long in = bytesIn.getCount();
+        return in == 0 ? 1 : (double) bytesOut.getCount() / in;
+    }
+
+    /**
+     * @return the CPU time spent compressing, or the wall time if the JVM does not measure thread CPU time
+     */
+    public long getCompressionTimeNanos() {
+        return compressionNanos.getCount();
+    }
+}
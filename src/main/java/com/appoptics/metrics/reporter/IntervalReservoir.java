@@ -0,0 +1,103 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Reservoir} that reports exactly the values recorded since its previous snapshot.
+ * Values are recorded into one of two {@link LogLinearHistogram}s; taking a snapshot swaps them
+ * and waits for writers still in the retired histogram to finish, as HdrHistogram's recorder
+ * does, so no value is lost or counted twice. Recording is constant time and allocation free, and
+ * the memory used is fixed no matter how many values are recorded: two histograms, about 18KB per
+ * metric at the default histogram size.
+ * <p>
+ * Since every snapshot starts a new interval, the reservoir should only be read by one reporter.
+ */
+public class IntervalReservoir implements Reservoir {
+    private static final Supplier<Reservoir> SUPPLIER = new Supplier<Reservoir>() {
+        @Override
+        public Reservoir get() {
+            return new IntervalReservoir();
+        }
+    };
+    private final AtomicLong startEpoch = new AtomicLong();
+    private final AtomicLong evenEndEpoch = new AtomicLong();
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+    private volatile LogLinearHistogram active;
+    private LogLinearHistogram inactive;
+
+    /**
+     * @return a supplier for {@link Appoptics#reservoir(Supplier)} or {@link Appoptics#defaultReservoir}
+     */
+    public static Supplier<Reservoir> supplier() {
+        return SUPPLIER;
+    }
+
+    public IntervalReservoir() {
+        this(new LogLinearHistogram());
+    }
+
+    public IntervalReservoir(LogLinearHistogram histogram) {
+        this.active = histogram;
+        this.inactive = histogram.emptyCopy();
+    }
+
+    /**
+     * @return the number of values recorded in the current interval
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(active.totalCount(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.record(value);
+        } finally {
+            if (epoch < 0) {
+                oddEndEpoch.getAndIncrement();
+            } else {
+                evenEndEpoch.getAndIncrement();
+            }
+        }
+    }
+
+    /**
+     * Ends the current interval and starts a new one.
+     *
+     * @return the values recorded in the interval that ended
+     */
+    @Override
+    public synchronized Snapshot getSnapshot() {
+        LogLinearHistogram retired = active;
+        inactive.reset();
+        active = inactive;
+        flipPhase();
+        inactive = retired;
+        return retired.snapshot();
+    }
+
+    /**
+     * Waits until every writer that entered before the flip has left.
+     */
+    private void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue;
+        if (nextPhaseIsEven) {
+            initialStartValue = 0;
+            evenEndEpoch.lazySet(initialStartValue);
+        } else {
+            initialStartValue = Long.MIN_VALUE;
+            oddEndEpoch.lazySet(initialStartValue);
+        }
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEndEpoch = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEndEpoch.get() != startValueAtFlip) {
+            Thread.yield();
+        }
+    }
+}
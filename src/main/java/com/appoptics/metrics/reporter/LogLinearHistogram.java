@@ -0,0 +1,139 @@
+package com.appoptics.metrics.reporter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of non-negative longs with buckets of bounded relative width, in the
+ * style of HdrHistogram: values below 2^precisionBits get a bucket each, and every power of two
+ * above that is split into 2^(precisionBits - 1) buckets, so a value is never off by more than
+ * 1 / 2^(precisionBits - 1) of itself. Recording is a single atomic increment and never allocates.
+ * Values above the maximum are recorded as the maximum. Counts are longs, so a bucket of a
+ * long-lived, busy reservoir cannot overflow.
+ * <p>
+ * Each bucket takes 8 bytes. At the defaults a histogram has 1,123 buckets, about 9KB; every
+ * precision bit roughly doubles that, and every doubling of the maximum adds a power of two's
+ * worth of buckets. Reservoirs built on this class hold several histograms per metric, so check
+ * {@link #bucketCount()} before giving thousands of metrics a finer or wider histogram.
+ */
+public class LogLinearHistogram {
+    /**
+     * 32 buckets per power of two, for a relative error below 3.2%
+     */
+    public static final int DEFAULT_PRECISION_BITS = 6;
+    /**
+     * ten minutes in nanoseconds
+     */
+    public static final long DEFAULT_MAX_VALUE = 600L * 1000 * 1000 * 1000;
+    private final int precisionBits;
+    private final int subBucketCount;
+    private final int halfSubBucketCount;
+    private final long maxValue;
+    private final AtomicLongArray counts;
+
+    public LogLinearHistogram() {
+        this(DEFAULT_PRECISION_BITS, DEFAULT_MAX_VALUE);
+    }
+
+    public LogLinearHistogram(int precisionBits, long maxValue) {
+        if (precisionBits < 2 || precisionBits > 16) {
+            throw new IllegalArgumentException("Precision bits must be between 2 and 16: " + precisionBits);
+        }
+        if (maxValue < 1) {
+            throw new IllegalArgumentException("Max value must be positive: " + maxValue);
+        }
+        this.precisionBits = precisionBits;
+        this.subBucketCount = 1 << precisionBits;
+        this.halfSubBucketCount = subBucketCount >> 1;
+        this.maxValue = maxValue;
+        this.counts = new AtomicLongArray(indexOf(maxValue) + 1);
+    }
+
+    /**
+     * @return an empty histogram with the same buckets as this one
+     */
+    public LogLinearHistogram emptyCopy() {
+        return new LogLinearHistogram(precisionBits, maxValue);
+    }
+
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(value));
+    }
+
+    int indexOf(long value) {
+        if (value < subBucketCount) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > maxValue) {
+            value = maxValue;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - precisionBits;
+        return subBucketCount + (shift - 1) * halfSubBucketCount + (int) (value >>> shift) - halfSubBucketCount;
+    }
+
+    /**
+     * @return the value that stands for all values in the bucket, i.e. the middle of its range
+     */
+    long valueAt(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int shift = (index - subBucketCount) / halfSubBucketCount + 1;
+        long lowest = (long) (index - subBucketCount - (shift - 1) * halfSubBucketCount + halfSubBucketCount) << shift;
+        return Math.min(lowest + (1L << (shift - 1)), maxValue);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long totalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of buckets, each of which takes 8 bytes
+     */
+    public int bucketCount() {
+        return counts.length();
+    }
+
+    /**
+     * Adds the counts of this histogram to the given counts, and clears them if requested.
+     */
+    void drainTo(long[] target, boolean clear) {
+        for (int i = 0; i < target.length; i++) {
+            long count = counts.get(i);
+            // most buckets are empty; only write to those that are not
+            if (clear && count != 0) {
+                count = counts.getAndSet(i, 0);
+            }
+            target[i] += count;
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * @return a snapshot of the current counts
+     */
+    public BucketSnapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        drainTo(copy, false);
+        return snapshot(copy);
+    }
+
+    /**
+     * @return a snapshot of the given counts, which must have been taken from histograms with the
+     * same buckets as this one
+     */
+    public BucketSnapshot snapshot(long[] bucketCounts) {
+        return new BucketSnapshot(this, bucketCounts);
+    }
+}
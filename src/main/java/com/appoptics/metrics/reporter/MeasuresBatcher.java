@@ -0,0 +1,126 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Measure;
+import com.appoptics.metrics.client.Measures;
+import com.appoptics.metrics.client.Tag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects readings into {@link Measures} batches that are capped by measure count and by
+ * estimated encoded size, and hands each full batch to the {@link BatchPoster} right away so that
+ * posting overlaps with the rest of the collection.
+ */
+public class MeasuresBatcher implements ReadingSink {
+    // rough encoded size of a measure without its name and tags
+    private static final int MEASURE_OVERHEAD_BYTES = 48;
+    private static final int COMPLEX_MEASURE_OVERHEAD_BYTES = 120;
+    private final long epoch;
+    private final Integer period;
+    private final long deadlineNanos;
+    private final int maxMeasures;
+    private final int maxBytes;
+    private final BatchPoster poster;
+    private final ReporterMetrics metrics;
+    private final List<Batch> batches = new ArrayList<Batch>();
+    private Measures current;
+    private int currentCount;
+    private int currentBytes;
+    private int measureCount;
+    private long encodeNanos;
+
+    /**
+     * @param deadlineNanos the deadline of the report cycle, see {@link Batch}
+     * @param maxMeasures   the maximum number of measures per batch
+     * @param maxBytes      the maximum estimated encoded bytes per batch, or 0 for no limit
+     * @param metrics       where to record the time spent building measures, may be null
+     */
+    public MeasuresBatcher(long epoch,
+                           Integer period,
+                           long deadlineNanos,
+                           int maxMeasures,
+                           int maxBytes,
+                           BatchPoster poster,
+                           ReporterMetrics metrics) {
+        this.epoch = epoch;
+        this.period = period;
+        this.deadlineNanos = deadlineNanos;
+        this.maxMeasures = maxMeasures;
+        this.maxBytes = maxBytes;
+        this.poster = poster;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void add(EmissionPlan plan, String name, double value) {
+        long start = startTiming();
+        add(new Measure(name, value, plan.tags),
+                MEASURE_OVERHEAD_BYTES + name.length() + plan.estimatedTagBytes,
+                start);
+    }
+
+    @Override
+    public void add(EmissionPlan plan, double sum, long count, double min, double max) {
+        long start = startTiming();
+        add(new Measure(plan.name, sum, count, min, max, plan.tags),
+                COMPLEX_MEASURE_OVERHEAD_BYTES + plan.name.length() + plan.estimatedTagBytes,
+                start);
+    }
+
+    @Override
+    public List<Batch> flush() throws InterruptedException {
+        if (current != null) {
+            submit();
+        }
+        if (metrics != null) {
+            metrics.encoded(encodeNanos, measureCount);
+        }
+        return batches;
+    }
+
+    private void add(Measure measure, int bytes, long start) {
+        if (current != null && (currentCount >= maxMeasures || (maxBytes > 0 && currentBytes + bytes > maxBytes))) {
+            stopTiming(start);
+            submitUninterruptibly();
+            start = startTiming();
+        }
+        if (current == null) {
+            current = new Measures(Collections.<Tag>emptyList(), epoch, period);
+        }
+        current.add(measure);
+        currentCount++;
+        measureCount++;
+        currentBytes += bytes;
+        stopTiming(start);
+    }
+
+    private long startTiming() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private void stopTiming(long start) {
+        if (metrics != null) {
+            encodeNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void submitUninterruptibly() {
+        try {
+            submit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to post a batch", e);
+        }
+    }
+
+    private void submit() throws InterruptedException {
+        Batch batch = new Batch(current, currentBytes, deadlineNanos);
+        current = null;
+        currentCount = 0;
+        currentBytes = 0;
+        poster.submit(batch);
+        batches.add(batch);
+    }
+}
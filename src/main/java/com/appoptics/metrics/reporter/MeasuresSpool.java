@@ -0,0 +1,199 @@
+package com.appoptics.metrics.reporter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A bounded, memory-mapped, on-disk FIFO of encoded measure payloads. Payloads that fail to post
+ * are appended here and replayed later. Since each payload carries its own epoch, replayed
+ * measures keep the time they were originally collected at.
+ * <p>
+ * The file is a fixed size header followed by records of the form [int length][payload]. The
+ * header holds the read and write positions so that unsent records survive a restart. When the
+ * file is full the unread records are compacted to the front; if there is still no room the new
+ * payload is dropped, so disk usage never exceeds the configured size.
+ */
+public class MeasuresSpool implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(MeasuresSpool.class);
+    private static final int MAGIC = 0x414f5350;
+    private static final int VERSION = 1;
+    private static final int READ_POS = 8;
+    private static final int WRITE_POS = 16;
+    private static final int RECORDS = 24;
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_OVERHEAD_BYTES = 4;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private long readPos;
+    private long writePos;
+    private int records;
+    private long spooled;
+    private long replayed;
+    private long dropped;
+
+    public MeasuresSpool(File file, long maxBytes) throws IOException {
+        if (maxBytes <= HEADER_BYTES + RECORD_OVERHEAD_BYTES || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Spool size must be between " +
+                    (HEADER_BYTES + RECORD_OVERHEAD_BYTES) + " and " + Integer.MAX_VALUE + " bytes");
+        }
+        this.file = file;
+        this.capacity = (int) maxBytes;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            boolean existing = raf.length() >= HEADER_BYTES;
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (existing && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && validHeader()) {
+                this.readPos = buffer.getLong(READ_POS);
+                this.writePos = buffer.getLong(WRITE_POS);
+                this.records = buffer.getInt(RECORDS);
+            } else {
+                if (existing) {
+                    log.warn("Discarding unreadable spool file {}", file);
+                }
+                this.readPos = HEADER_BYTES;
+                this.writePos = HEADER_BYTES;
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                writeHeader();
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private boolean validHeader() {
+        long read = buffer.getLong(READ_POS);
+        long write = buffer.getLong(WRITE_POS);
+        return read >= HEADER_BYTES && read <= write && write <= capacity && buffer.getInt(RECORDS) >= 0;
+    }
+
+    /**
+     * Appends a payload, compacting the file if needed.
+     *
+     * @return false if the spool had no room and the payload was dropped
+     */
+    public synchronized boolean append(byte[] payload) {
+        int needed = RECORD_OVERHEAD_BYTES + payload.length;
+        if (writePos + needed > capacity) {
+            compact();
+        }
+        if (writePos + needed > capacity) {
+            dropped++;
+            log.warn("Spool {} is full, dropping {} bytes of measures", file, payload.length);
+            return false;
+        }
+        int pos = (int) writePos;
+        buffer.putInt(pos, payload.length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(pos + RECORD_OVERHEAD_BYTES);
+        target.put(payload);
+        writePos += needed;
+        records++;
+        spooled++;
+        writeHeader();
+        buffer.force();
+        return true;
+    }
+
+    /**
+     * @return the oldest payload without removing it, or null if the spool is empty
+     */
+    public synchronized byte[] peek() {
+        if (records == 0) {
+            return null;
+        }
+        int pos = (int) readPos;
+        byte[] payload = new byte[buffer.getInt(pos)];
+        ByteBuffer source = buffer.duplicate();
+        source.position(pos + RECORD_OVERHEAD_BYTES);
+        source.get(payload);
+        return payload;
+    }
+
+    /**
+     * Removes the oldest payload, once it has been posted successfully.
+     */
+    public synchronized void commit() {
+        if (records == 0) {
+            return;
+        }
+        readPos += RECORD_OVERHEAD_BYTES + buffer.getInt((int) readPos);
+        records--;
+        replayed++;
+        if (records == 0) {
+            readPos = HEADER_BYTES;
+            writePos = HEADER_BYTES;
+        }
+        writeHeader();
+        buffer.force();
+    }
+
+    private void compact() {
+        if (readPos == HEADER_BYTES) {
+            return;
+        }
+        int unread = (int) (writePos - readPos);
+        ByteBuffer source = buffer.duplicate();
+        source.position((int) readPos);
+        source.limit((int) writePos);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_BYTES);
+        target.put(source);
+        readPos = HEADER_BYTES;
+        writePos = HEADER_BYTES + unread;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        buffer.putLong(READ_POS, readPos);
+        buffer.putLong(WRITE_POS, writePos);
+        buffer.putInt(RECORDS, records);
+    }
+
+    /**
+     * @return the number of payloads waiting to be replayed
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    public synchronized boolean isEmpty() {
+        return records == 0;
+    }
+
+    /**
+     * @return the number of bytes used by payloads waiting to be replayed
+     */
+    public synchronized long getBytes() {
+        return writePos - readPos;
+    }
+
+    public synchronized long getSpooled() {
+        return spooled;
+    }
+
+    public synchronized long getReplayed() {
+        return replayed;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        raf.close();
+    }
+}
@@ -0,0 +1,148 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the metric handed out by the fluent helper for a plain name or a tagged {@link Signal}
+ * with a single map lookup, skipping name encoding for metrics that have already been registered.
+ * Handles are kept consistent with the registry through a removal listener, which also keeps the
+ * {@link TagLimiter} counts of registered tag sets.
+ * <p>
+ * There is one instance per registry. Registries are only weakly referenced, so throwaway
+ * registries can be collected; their handles are dropped and their tag sets released from the
+ * {@link TagLimiter} the next time handles are looked up.
+ */
+public class MetricHandles extends MetricRemovalListener {
+    private static final ConcurrentMap<RegistryRef, MetricHandles> registries =
+            new ConcurrentHashMap<RegistryRef, MetricHandles>();
+    private static final ReferenceQueue<MetricRegistry> collected = new ReferenceQueue<MetricRegistry>();
+    private final WeakReference<MetricRegistry> registry;
+    private final TagLimiter tagLimiter;
+    private final ConcurrentMap<Object, Metric> handles = new ConcurrentHashMap<Object, Metric>();
+    private final ConcurrentMap<String, Signal> signals = new ConcurrentHashMap<String, Signal>();
+
+    /**
+     * A weak registry key, equal to the other keys of the same registry.
+     */
+    private static class RegistryRef extends WeakReference<MetricRegistry> {
+        private final int hash;
+
+        RegistryRef(MetricRegistry registry, ReferenceQueue<MetricRegistry> queue) {
+            super(registry, queue);
+            this.hash = System.identityHashCode(registry);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RegistryRef)) {
+                return false;
+            }
+            MetricRegistry registry = get();
+            return registry != null && registry == ((RegistryRef) o).get();
+        }
+    }
+
+    /**
+     * @return the number of registries with handles, for tests
+     */
+    static int registryCount() {
+        expungeCollected();
+        return registries.size();
+    }
+
+    public static MetricHandles of(MetricRegistry registry) {
+        expungeCollected();
+        MetricHandles handles = registries.get(new RegistryRef(registry, null));
+        if (handles == null) {
+            handles = new MetricHandles(registry, Appoptics.tagLimiter());
+            MetricHandles existing = registries.putIfAbsent(new RegistryRef(registry, collected), handles);
+            if (existing != null) {
+                return existing;
+            }
+            registry.addListener(handles);
+        }
+        return handles;
+    }
+
+    private static void expungeCollected() {
+        Reference<? extends MetricRegistry> ref;
+        while ((ref = collected.poll()) != null) {
+            MetricHandles handles = registries.remove(ref);
+            if (handles != null) {
+                handles.release();
+            }
+        }
+    }
+
+    MetricHandles(MetricRegistry registry, TagLimiter tagLimiter) {
+        this.registry = new WeakReference<MetricRegistry>(registry);
+        this.tagLimiter = tagLimiter;
+    }
+
+    /**
+     * Releases the tag sets of a collected registry.
+     */
+    private void release() {
+        for (Signal signal : signals.values()) {
+            tagLimiter.removed(signal);
+        }
+        signals.clear();
+        handles.clear();
+    }
+
+    /**
+     * @param key the plain metric name or the signal for a tagged metric
+     * @return the registered metric, or null if it has not been resolved yet
+     */
+    public Metric get(Object key) {
+        return handles.get(key);
+    }
+
+    /**
+     * Remembers the metric registered under the supplied name.
+     *
+     * @param key          the plain metric name or the signal for a tagged metric
+     * @param registryName the name the metric is registered under
+     * @param metric       the registered metric
+     */
+    public void put(Object key, String registryName, Metric metric) {
+        if (handles.put(key, metric) == null && key instanceof Signal) {
+            if (signals.put(registryName, (Signal) key) == null) {
+                tagLimiter.added((Signal) key);
+            }
+        }
+        MetricRegistry registry = this.registry.get();
+        if (registry == null || registry.getMetrics().get(registryName) != metric) {
+            // removed while we were resolving it
+            onMetricRemoved(registryName);
+        }
+    }
+
+    public int size() {
+        return handles.size();
+    }
+
+    @Override
+    protected void onMetricRemoved(String name) {
+        Signal signal = signals.remove(name);
+        if (signal != null) {
+            tagLimiter.removed(signal);
+        }
+        handles.remove(signal != null ? signal : name);
+    }
+}
@@ -0,0 +1,41 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.MetricRegistryListener;
+
+/**
+ * A registry listener that funnels the removal of any kind of metric into a single callback.
+ */
+public abstract class MetricRemovalListener extends MetricRegistryListener.Base {
+
+    /**
+     * Called when a metric of any type has been removed from the registry.
+     *
+     * @param name the registry name of the removed metric
+     */
+    protected abstract void onMetricRemoved(String name);
+
+    @Override
+    public void onGaugeRemoved(String name) {
+        onMetricRemoved(name);
+    }
+
+    @Override
+    public void onCounterRemoved(String name) {
+        onMetricRemoved(name);
+    }
+
+    @Override
+    public void onHistogramRemoved(String name) {
+        onMetricRemoved(name);
+    }
+
+    @Override
+    public void onMeterRemoved(String name) {
+        onMetricRemoved(name);
+    }
+
+    @Override
+    public void onTimerRemoved(String name) {
+        onMetricRemoved(name);
+    }
+}
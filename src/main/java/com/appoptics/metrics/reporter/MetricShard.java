@@ -0,0 +1,50 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * One slice of the metrics handed to a report cycle. Metrics are dealt to shards round-robin per
+ * metric type so that every shard gets a similar mix of cheap and expensive metrics.
+ */
+class MetricShard {
+    final SortedMap<String, Gauge> gauges = new TreeMap<String, Gauge>();
+    final SortedMap<String, Counter> counters = new TreeMap<String, Counter>();
+    final SortedMap<String, Histogram> histograms = new TreeMap<String, Histogram>();
+    final SortedMap<String, Meter> meters = new TreeMap<String, Meter>();
+    final SortedMap<String, Timer> timers = new TreeMap<String, Timer>();
+
+    static List<MetricShard> partition(int count,
+                                       SortedMap<String, Gauge> gauges,
+                                       SortedMap<String, Counter> counters,
+                                       SortedMap<String, Histogram> histograms,
+                                       SortedMap<String, Meter> meters,
+                                       SortedMap<String, Timer> timers) {
+        List<MetricShard> shards = new ArrayList<MetricShard>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new MetricShard());
+        }
+        int i = 0;
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            shards.get(i++ % count).gauges.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            shards.get(i++ % count).counters.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            shards.get(i++ % count).histograms.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            shards.get(i++ % count).meters.put(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            shards.get(i++ % count).timers.put(entry.getKey(), entry.getValue());
+        }
+        return shards;
+    }
+}
@@ -1,18 +1,130 @@
 package com.appoptics.metrics.reporter;
 
+import com.codahale.metrics.Counter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caches the encoded registry name for a {@link Signal}.
+ * <p>
+ * Lookups never block: entries live in a concurrent map and only record when they were last read.
+ * When the cache grows past its maximum size, a single writer evicts using sampled LRU, i.e. it
+ * walks a handful of entries from a cursor that cycles through the map and drops the least
+ * recently used one of the sample.
+ */
 public class NameCache {
-    private final LRU<Signal, String> cache;
+    private static final int SAMPLE_SIZE = 8;
+    private final ConcurrentMap<Signal, Entry> cache = new ConcurrentHashMap<Signal, Entry>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final Counter hits = new Counter();
+    private final Counter misses = new Counter();
+    private final Counter evictions = new Counter();
+    private Iterator<Map.Entry<Signal, Entry>> cursor;
+    private volatile int maxSize;
+
+    private static class Entry {
+        final String value;
+        volatile long lastAccess;
+
+        Entry(String value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
 
     public NameCache(int maxSize) {
-        this.cache = new LRU<Signal, String>(maxSize);
+        setMaxSize(maxSize);
     }
 
     public String get(Signal signal, Supplier<String> fullNameSupplier) {
-        String result = cache.get(signal);
-        if (result == null) {
-            result = fullNameSupplier.get();
-            cache.set(signal, result);
+        Entry entry = cache.get(signal);
+        if (entry != null) {
+            hits.inc();
+            entry.lastAccess = System.nanoTime();
+            return entry.value;
+        }
+        misses.inc();
+        String result = fullNameSupplier.get();
+        if (cache.putIfAbsent(signal, new Entry(result, System.nanoTime())) == null
+                && size.incrementAndGet() > maxSize) {
+            evict();
         }
         return result;
     }
+
+    /**
+     * Changes the maximum number of cached names. Shrinking takes effect on the next insertion.
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getHits() {
+        return hits.getCount();
+    }
+
+    public long getMisses() {
+        return misses.getCount();
+    }
+
+    public long getEvictions() {
+        return evictions.getCount();
+    }
+
+    private void evict() {
+        // only one thread needs to evict, the others carry on
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (size.get() > maxSize) {
+                Map.Entry<Signal, Entry> victim = null;
+                for (int i = 0; i < SAMPLE_SIZE; i++) {
+                    Map.Entry<Signal, Entry> candidate = next();
+                    if (candidate == null) {
+                        break;
+                    }
+                    if (victim == null || candidate.getValue().lastAccess < victim.getValue().lastAccess) {
+                        victim = candidate;
+                    }
+                }
+                if (victim == null) {
+                    return;
+                }
+                if (cache.remove(victim.getKey(), victim.getValue())) {
+                    size.decrementAndGet();
+                    evictions.inc();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private Map.Entry<Signal, Entry> next() {
+        if (cursor == null || !cursor.hasNext()) {
+            cursor = cache.entrySet().iterator();
+            if (!cursor.hasNext()) {
+                return null;
+            }
+        }
+        return cursor.next();
+    }
 }
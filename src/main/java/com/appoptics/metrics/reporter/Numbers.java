@@ -12,8 +12,11 @@ public class Numbers {
     }
 
     public static boolean isANumber(Number number) {
-        final double doubleValue = number.doubleValue();
-        return !(Double.isNaN(doubleValue) || Double.isInfinite(doubleValue));
+        return isANumber(number.doubleValue());
+    }
+
+    public static boolean isANumber(double value) {
+        return !(Double.isNaN(value) || Double.isInfinite(value));
     }
 
 }
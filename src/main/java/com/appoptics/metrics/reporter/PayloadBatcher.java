@@ -0,0 +1,148 @@
+package com.appoptics.metrics.reporter;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams readings through a {@link PayloadEncoder} into encoded payloads that are capped by
+ * measure count and by encoded size, and hands each full payload to the {@link BatchPoster} right
+ * away. Unlike {@link MeasuresBatcher}, no measure objects are built.
+ */
+public class PayloadBatcher implements ReadingSink {
+    // generous encoded size of the numbers and field names of a measure
+    private static final int MEASURE_OVERHEAD_BYTES = 120;
+    // closing the measurements array and the payload
+    private static final int PAYLOAD_TRAILER_BYTES = 2;
+    private final long epoch;
+    private final Integer period;
+    private final long deadlineNanos;
+    private final int maxMeasures;
+    private final int maxBytes;
+    private final BatchPoster poster;
+    private final PayloadEncoder encoder;
+    private final ReporterMetrics metrics;
+    private final List<Batch> batches = new ArrayList<Batch>();
+    private boolean open;
+    private int measureCount;
+    private long encodeNanos;
+
+    /**
+     * @param deadlineNanos the deadline of the report cycle, see {@link Batch}
+     * @param maxMeasures   the maximum number of measures per payload
+     * @param maxBytes      the maximum encoded bytes per payload, or 0 for no limit
+     * @param encoder       the encoder to stream into; its buffer is reused between payloads
+     * @param metrics       where to record the time spent encoding, may be null
+     */
+    public PayloadBatcher(long epoch,
+                          Integer period,
+                          long deadlineNanos,
+                          int maxMeasures,
+                          int maxBytes,
+                          BatchPoster poster,
+                          PayloadEncoder encoder,
+                          ReporterMetrics metrics) {
+        this.epoch = epoch;
+        this.period = period;
+        this.deadlineNanos = deadlineNanos;
+        this.maxMeasures = maxMeasures;
+        this.maxBytes = maxBytes;
+        this.poster = poster;
+        this.encoder = encoder;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void add(EmissionPlan plan, String name, double value) {
+        if (Numbers.isANumber(value)) {
+            add(plan, plan.encodedNameOf(name), value, 1, value, value);
+        }
+    }
+
+    @Override
+    public void add(EmissionPlan plan, double sum, long count, double min, double max) {
+        if (Numbers.isANumber(sum) && Numbers.isANumber(min) && Numbers.isANumber(max)) {
+            add(plan, plan.encodedName, sum, count, min, max);
+        }
+    }
+
+    @Override
+    public List<Batch> flush() throws InterruptedException {
+        if (open) {
+            submit();
+        }
+        if (metrics != null) {
+            metrics.encoded(encodeNanos, measureCount);
+        }
+        return batches;
+    }
+
+    private void add(EmissionPlan plan,
+                     SerializedString name,
+                     double sum,
+                     long count,
+                     double min,
+                     double max) {
+        if (open && isFull(name.charLength() + plan.estimatedTagBytes)) {
+            submitUninterruptibly();
+        }
+        long start = startTiming();
+        try {
+            if (!open) {
+                encoder.begin(epoch, period);
+                open = true;
+            }
+            encoder.add(name, plan.encodedTags, sum, count, min, max);
+            measureCount++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode measure " + name, e);
+        }
+        stopTiming(start);
+    }
+
+    private boolean isFull(int nameAndTagBytes) {
+        if (encoder.count() >= maxMeasures) {
+            return true;
+        }
+        return maxBytes > 0
+                && encoder.size() + MEASURE_OVERHEAD_BYTES + nameAndTagBytes + PAYLOAD_TRAILER_BYTES > maxBytes;
+    }
+
+    private void submitUninterruptibly() {
+        try {
+            submit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to post a batch", e);
+        }
+    }
+
+    private void submit() throws InterruptedException {
+        int count = encoder.count();
+        long start = startTiming();
+        byte[] payload;
+        try {
+            payload = encoder.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode payload", e);
+        } finally {
+            open = false;
+        }
+        stopTiming(start);
+        Batch batch = new Batch(payload, count, deadlineNanos);
+        poster.submit(batch);
+        batches.add(batch);
+    }
+
+    private long startTiming() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    private void stopTiming(long start) {
+        if (metrics != null) {
+            encodeNanos += System.nanoTime() - start;
+        }
+    }
+}
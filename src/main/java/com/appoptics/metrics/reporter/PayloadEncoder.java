@@ -0,0 +1,152 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Sanitizer;
+import com.appoptics.metrics.client.Tag;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Streams measures into the JSON body of a measurements post, in the same form the client
+ * serializes {@link com.appoptics.metrics.client.Measures} to, without building any intermediate
+ * objects. Names and tags are encoded once per {@link EmissionPlan}, and the output buffer is
+ * kept between payloads, so an encoder only allocates the bytes of the payloads it hands out.
+ * <p>
+ * An encoder is not thread safe.
+ */
+public class PayloadEncoder {
+    private static final JsonFactory factory = new JsonFactory();
+    private static final SerializedString TIME = new SerializedString("time");
+    private static final SerializedString PERIOD = new SerializedString("period");
+    private static final SerializedString MEASUREMENTS = new SerializedString("measurements");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString SUM = new SerializedString("sum");
+    private static final SerializedString COUNT = new SerializedString("count");
+    private static final SerializedString MIN = new SerializedString("min");
+    private static final SerializedString MAX = new SerializedString("max");
+    private static final SerializedString TAGS = new SerializedString("tags");
+    private static final int MAX_TAG_NAME_LENGTH = 64;
+    private static final int MAX_TAG_VALUE_LENGTH = 255;
+    private final ByteArrayOutputStream out;
+    private JsonGenerator generator;
+    private int count;
+
+    public PayloadEncoder(int initialBytes) {
+        this.out = new ByteArrayOutputStream(initialBytes);
+    }
+
+    /**
+     * Starts a payload.
+     */
+    public void begin(long epoch, Integer period) throws IOException {
+        out.reset();
+        count = 0;
+        generator = factory.createGenerator(out);
+        generator.writeStartObject();
+        generator.writeFieldName(TIME);
+        generator.writeNumber(epoch);
+        if (period != null) {
+            generator.writeFieldName(PERIOD);
+            generator.writeNumber(period);
+        }
+        generator.writeFieldName(MEASUREMENTS);
+        generator.writeStartArray();
+    }
+
+    /**
+     * Adds a measure to the current payload.
+     *
+     * @param name the encoded measure name, see {@link #encodeName(String)}
+     * @param tags the encoded tags, see {@link #encodeTags(Tag[])}, or null for none
+     */
+    public void add(SerializableString name, SerializableString tags, double sum, long count, double min, double max)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(NAME);
+        generator.writeString(name);
+        generator.writeFieldName(SUM);
+        generator.writeNumber(sum);
+        generator.writeFieldName(COUNT);
+        generator.writeNumber(count);
+        generator.writeFieldName(MIN);
+        generator.writeNumber(min);
+        generator.writeFieldName(MAX);
+        generator.writeNumber(max);
+        if (tags != null) {
+            generator.writeFieldName(TAGS);
+            generator.writeRawValue(tags);
+        }
+        generator.writeEndObject();
+        this.count++;
+    }
+
+    /**
+     * @return the number of measures in the current payload
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes encoded so far for the current payload
+     */
+    public int size() {
+        return out.size() + generator.getOutputBuffered();
+    }
+
+    /**
+     * Completes the current payload.
+     *
+     * @return a copy of the encoded payload
+     */
+    public byte[] finish() throws IOException {
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+        generator = null;
+        byte[] payload = out.toByteArray();
+        out.reset();
+        return payload;
+    }
+
+    /**
+     * @return the measure name, sanitized the way the client sanitizes it, ready to be written
+     */
+    public static SerializedString encodeName(String name) {
+        return new SerializedString(Sanitizer.METRIC_NAME_SANITIZER.apply(name));
+    }
+
+    /**
+     * @return the tags as a JSON object ready to be written, sanitized and trimmed the way the
+     * client's {@code Measure.addTag} does it, or null if there are none
+     */
+    public static SerializedString encodeTags(Tag[] tags) {
+        if (tags.length == 0) {
+            return null;
+        }
+        try {
+            StringWriter json = new StringWriter();
+            JsonGenerator generator = factory.createGenerator(json);
+            generator.writeStartObject();
+            for (Tag tag : tags) {
+                generator.writeStringField(
+                        trimToSize(Sanitizer.TAG_NAME_SANITIZER.apply(tag.name), MAX_TAG_NAME_LENGTH),
+                        trimToSize(Sanitizer.TAG_VALUE_SANITIZER.apply(tag.value), MAX_TAG_VALUE_LENGTH));
+            }
+            generator.writeEndObject();
+            generator.close();
+            return new SerializedString(json.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String trimToSize(String value, int maxLength) {
+        return value == null || value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+}
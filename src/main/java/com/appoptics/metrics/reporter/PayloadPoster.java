@@ -0,0 +1,54 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Authorization;
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+import com.appoptics.metrics.client.PostResult;
+import com.appoptics.metrics.client.ResponseConverter;
+import com.appoptics.metrics.client.URIs;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts already encoded measurement payloads straight through an {@link IPoster}, using the same
+ * URL and headers as the client.
+ */
+public class PayloadPoster {
+    static final String MEASUREMENTS_PATH = "/v1/measurements";
+    private final IPoster poster;
+    private final String url;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    private final Map<String, String> headers = new HashMap<String, String>();
+    private final ResponseConverter responseConverter = new ResponseConverter();
+
+    public PayloadPoster(ReporterAttributes atts) {
+        this.poster = atts.resolvePoster();
+        this.url = URIs.removePath(URI.create(atts.url)).toString() + MEASUREMENTS_PATH;
+        this.connectTimeout = atts.connectTimeout != null ? atts.connectTimeout : new Duration(5, TimeUnit.SECONDS);
+        this.readTimeout = atts.readTimeout != null ? atts.readTimeout : new Duration(10, TimeUnit.SECONDS);
+        this.headers.put("Content-Type", "application/json");
+        this.headers.put("Authorization", Authorization.buildAuthHeader(atts.token));
+        this.headers.put("User-Agent", Agent.AGENT_IDENTIFIER);
+    }
+
+    /**
+     * @return the longest a post waits for a response
+     */
+    long readTimeoutNanos() {
+        return readTimeout.to(TimeUnit.NANOSECONDS);
+    }
+
+    public PostResult post(byte[] payload) {
+        try {
+            HttpResponse response = poster.post(url, connectTimeout, readTimeout, headers, payload);
+            return responseConverter.convert(payload, response);
+        } catch (Exception e) {
+            return responseConverter.convert(payload, e);
+        }
+    }
+}
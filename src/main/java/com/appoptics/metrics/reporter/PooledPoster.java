@@ -0,0 +1,236 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link IPoster} that keeps connections alive in a bounded pool, so that TCP and TLS
+ * handshakes happen when a connection is first opened rather than on every report. Over TLS,
+ * HTTP/2 is negotiated where the server supports it, and concurrent posts, such as batches posted
+ * in parallel, are multiplexed over a single connection.
+ * <p>
+ * Posting is not pipelined: {@link IPoster#post} is synchronous, so each caller waits for its
+ * response. Posts only overlap when the reporter posts several batches at once, see
+ * {@link ReporterBuilder#setMaxInflightBatches(int)} and the posting queue.
+ * <p>
+ * It is built on OkHttp, with daemon dispatcher threads. One instance may be shared by several
+ * reporters, also with different timeouts.
+ */
+public class PooledPoster implements IPoster, Closeable {
+    private static final MediaType JSON = MediaType.parse("application/json");
+    private final OkHttpClient client;
+    private final ConnectionPool pool;
+    private final ConcurrentMap<Timeouts, OkHttpClient> timedClients = new ConcurrentHashMap<Timeouts, OkHttpClient>();
+
+    /**
+     * A pair of timeouts, in nanoseconds, or -1 where the client's default applies.
+     */
+    private static class Timeouts {
+        final long connectNanos;
+        final long readNanos;
+
+        Timeouts(Duration connectTimeout, Duration readTimeout) {
+            this.connectNanos = connectTimeout != null ? connectTimeout.to(TimeUnit.NANOSECONDS) : -1;
+            this.readNanos = readTimeout != null ? readTimeout.to(TimeUnit.NANOSECONDS) : -1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Timeouts)) {
+                return false;
+            }
+            Timeouts other = (Timeouts) o;
+            return connectNanos == other.connectNanos && readNanos == other.readNanos;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (connectNanos ^ (connectNanos >>> 32)) + (int) (readNanos ^ (readNanos >>> 32));
+        }
+    }
+
+    public PooledPoster() {
+        this(5, 5, TimeUnit.MINUTES, 16);
+    }
+
+    /**
+     * @param maxIdleConnections the number of idle connections kept
+     * @param keepAlive          how long an idle connection is kept; longer than the reporting
+     *                           period keeps connections open between reports
+     * @param maxConcurrentPosts the number of posts sent at once, others wait for a connection
+     */
+    public PooledPoster(int maxIdleConnections, long keepAlive, TimeUnit unit, int maxConcurrentPosts) {
+        if (maxIdleConnections < 1) {
+            throw new IllegalArgumentException("Max idle connections must be positive: " + maxIdleConnections);
+        }
+        if (keepAlive <= 0) {
+            throw new IllegalArgumentException("Keep alive must be positive: " + keepAlive);
+        }
+        if (maxConcurrentPosts < 1) {
+            throw new IllegalArgumentException("Max concurrent posts must be positive: " + maxConcurrentPosts);
+        }
+        // like OkHttp's default dispatcher executor, but with daemon threads
+        Dispatcher dispatcher = new Dispatcher(new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new DaemonThreadFactory("appoptics-pooled-poster")));
+        dispatcher.setMaxRequests(maxConcurrentPosts);
+        dispatcher.setMaxRequestsPerHost(maxConcurrentPosts);
+        this.pool = new ConnectionPool(maxIdleConnections, keepAlive, unit);
+        this.client = new OkHttpClient.Builder()
+                .connectionPool(pool)
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    @Override
+    public HttpResponse post(String url,
+                             Duration connectTimeout,
+                             Duration readTimeout,
+                             Map<String, String> headers,
+                             byte[] payload) {
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(JSON, payload));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        Call call = clientFor(connectTimeout, readTimeout).newCall(request.build());
+        PostCallback callback = new PostCallback(url);
+        // enqueued rather than executed, so that the dispatcher bounds the concurrent posts
+        call.enqueue(callback);
+        try {
+            return callback.await();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while posting to " + url, e);
+        }
+    }
+
+    private static class PostCallback implements Callback {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final String url;
+        private HttpResponse response;
+        private IOException failure;
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try {
+                ResponseBody body = response.body();
+                // reading the whole body returns the connection to the pool
+                this.response = response(response.code(), body != null ? body.bytes() : new byte[0]);
+            } catch (IOException e) {
+                this.failure = e;
+            } finally {
+                response.close();
+                done.countDown();
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            this.failure = e;
+            done.countDown();
+        }
+
+        PostCallback(String url) {
+            this.url = url;
+        }
+
+        HttpResponse await() throws InterruptedException {
+            done.await();
+            if (failure != null) {
+                throw new PostException("Could not post to " + url, failure);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * @return a client with the timeouts, sharing the pool and dispatcher of all other clients
+     */
+    private OkHttpClient clientFor(Duration connectTimeout, Duration readTimeout) {
+        Timeouts timeouts = new Timeouts(connectTimeout, readTimeout);
+        OkHttpClient timed = timedClients.get(timeouts);
+        if (timed != null) {
+            return timed;
+        }
+        OkHttpClient.Builder builder = client.newBuilder();
+        if (connectTimeout != null) {
+            builder.connectTimeout(connectTimeout.to(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        if (readTimeout != null) {
+            builder.readTimeout(readTimeout.to(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+            builder.writeTimeout(readTimeout.to(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
+        timed = builder.build();
+        OkHttpClient existing = timedClients.putIfAbsent(timeouts, timed);
+        return existing != null ? existing : timed;
+    }
+
+    /**
+     * @return the number of clients built for distinct timeouts
+     */
+    int getTimedClientCount() {
+        return timedClients.size();
+    }
+
+    private static HttpResponse response(final int code, final byte[] body) {
+        return new HttpResponse() {
+            @Override
+            public int getResponseCode() {
+                return code;
+            }
+
+            @Override
+            public byte[] getResponseBody() {
+                return body;
+            }
+        };
+    }
+
+    /**
+     * @return the number of open connections, idle or in use
+     */
+    public int getConnectionCount() {
+        return pool.connectionCount();
+    }
+
+    public int getIdleConnectionCount() {
+        return pool.idleConnectionCount();
+    }
+
+    /**
+     * Closes the idle connections and stops the dispatcher's threads.
+     */
+    @Override
+    public void close() {
+        pool.evictAll();
+        client.dispatcher().executorService().shutdown();
+    }
+}
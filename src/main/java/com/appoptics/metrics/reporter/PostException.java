@@ -0,0 +1,11 @@
+package com.appoptics.metrics.reporter;
+
+/**
+ * Thrown by a poster when a post got no response, e.g. because the connection failed or timed
+ * out. The cause is the underlying I/O failure.
+ */
+public class PostException extends RuntimeException {
+    public PostException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
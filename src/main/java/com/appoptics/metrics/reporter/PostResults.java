@@ -0,0 +1,27 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.PostResult;
+
+/**
+ * Helpers to classify the results of posts.
+ */
+public class PostResults {
+    private PostResults() {
+        // helpers only
+    }
+
+    /**
+     * @return true if the post failed in a way that may succeed when the same payload is posted
+     * again, i.e. it never got a response, or the API was unavailable or throttling
+     */
+    public static boolean isRetryable(PostResult result) {
+        if (!result.isError()) {
+            return false;
+        }
+        if (result.exception != null || result.response == null) {
+            return true;
+        }
+        int code = result.response.getResponseCode();
+        return code >= 500 || code == 429;
+    }
+}
@@ -0,0 +1,95 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.PostMeasuresResult;
+import com.appoptics.metrics.client.PostResult;
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reposts the payloads of the failed, retryable results of a post according to a
+ * {@link RetryPolicy}. All batches of a report cycle share the cycle's deadline, and a retry is
+ * only started if its backoff and a post that runs into the read timeout both fit before it, so
+ * that retries never pile up into the next report however many batches fail.
+ */
+public class PostRetrier {
+    private static final Logger log = LoggerFactory.getLogger(PostRetrier.class);
+    private final RetryPolicy policy;
+    private final PayloadPoster poster;
+    private final Counter retries = new Counter();
+    private final Counter recoveries = new Counter();
+    private final Counter giveUps = new Counter();
+
+    public PostRetrier(RetryPolicy policy, PayloadPoster poster) {
+        this.policy = policy;
+        this.poster = poster;
+    }
+
+    /**
+     * Retries the failed results of posting the batch in place.
+     *
+     * @return the result, with each retried entry replaced by the outcome of its last attempt
+     */
+    public PostMeasuresResult retry(Batch batch, PostMeasuresResult result) {
+        List<PostResult> results = result.results;
+        for (int i = 0; i < results.size(); i++) {
+            PostResult failed = results.get(i);
+            if (failed.payload != null && PostResults.isRetryable(failed)) {
+                results.set(i, retry(failed, batch.deadlineNanos));
+            }
+        }
+        return result;
+    }
+
+    private PostResult retry(PostResult failed, long deadline) {
+        PostResult result = failed;
+        for (int retry = 0; retry < policy.maxRetries; retry++) {
+            long backoff = policy.backoffNanos(retry, ThreadLocalRandom.current());
+            if (System.nanoTime() + backoff + poster.readTimeoutNanos() - deadline > 0) {
+                break;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            retries.inc();
+            result = poster.post(failed.payload);
+            if (!PostResults.isRetryable(result)) {
+                if (!result.isError()) {
+                    recoveries.inc();
+                }
+                return result;
+            }
+        }
+        giveUps.inc();
+        log.debug("Giving up on retrying post: {}", result);
+        return result;
+    }
+
+    /**
+     * @return the number of payloads that were posted again
+     */
+    public Counter getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the number of failed posts that succeeded on a retry
+     */
+    public Counter getRecoveries() {
+        return recoveries;
+    }
+
+    /**
+     * @return the number of failed posts that were not retried any further
+     */
+    public Counter getGiveUps() {
+        return giveUps;
+    }
+}
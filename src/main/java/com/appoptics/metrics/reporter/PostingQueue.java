@@ -0,0 +1,157 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of batches waiting to be posted, served by its own pool of posting threads, so
+ * that collecting a report cycle never waits on the network. When the queue is full, the
+ * {@link OverflowPolicy} decides whether the oldest waiting batch is dropped or the reporting
+ * thread blocks until there is room. A dropped batch's task is cancelled, which its owner can
+ * observe in {@link FutureTask#done()}.
+ */
+public class PostingQueue {
+    private static final Logger log = LoggerFactory.getLogger(PostingQueue.class);
+    private final ThreadPoolExecutor executor;
+    private final Counter dropped = new Counter();
+    private final AtomicLong lastWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public enum OverflowPolicy {
+        /**
+         * Drops the batch that has been waiting the longest to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Blocks the reporting thread until a batch has been taken off the queue.
+         */
+        BLOCK
+    }
+
+    public PostingQueue(int capacity, int workers, OverflowPolicy policy, String name) {
+        this.executor = new ThreadPoolExecutor(workers, workers,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new DaemonThreadFactory(name + "-post"),
+                policy == OverflowPolicy.BLOCK ? new BlockWhenFull() : new DropOldest());
+    }
+
+    /**
+     * Queues the task that posts the batch.
+     */
+    public void enqueue(Batch batch, FutureTask<?> task) {
+        executor.execute(new QueuedTask(batch, task, System.nanoTime()));
+    }
+
+    /**
+     * @return the number of batches waiting to be posted
+     */
+    public int getDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of batches dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.getCount();
+    }
+
+    /**
+     * @return how long the most recently posted batch waited in the queue
+     */
+    public long getLastWait(TimeUnit unit) {
+        return unit.convert(lastWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the longest time any batch has waited in the queue
+     */
+    public long getMaxWait(TimeUnit unit) {
+        return unit.convert(maxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops accepting batches. Batches already queued are still posted.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void recordWait(long waitNanos) {
+        lastWaitNanos.set(waitNanos);
+        long max = maxWaitNanos.get();
+        while (waitNanos > max && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private class QueuedTask implements Runnable {
+        final Batch batch;
+        final FutureTask<?> task;
+        final long enqueuedAt;
+
+        QueuedTask(Batch batch, FutureTask<?> task, long enqueuedAt) {
+            this.batch = batch;
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void run() {
+            recordWait(System.nanoTime() - enqueuedAt);
+            task.run();
+        }
+    }
+
+    private class DropOldest implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Posting queue has been shut down");
+            }
+            QueuedTask oldest = (QueuedTask) executor.getQueue().poll();
+            if (oldest != null) {
+                dropped.inc();
+                oldest.task.cancel(false);
+                log.warn("Posting queue is full, dropped a batch of {} measures", oldest.batch.size());
+            }
+            executor.execute(runnable);
+        }
+    }
+
+    private static class BlockWhenFull implements RejectedExecutionHandler {
+        private static final long SHUTDOWN_CHECK_MILLIS = 100;
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Posting queue has been shut down");
+            }
+            BlockingQueue<Runnable> queue = executor.getQueue();
+            try {
+                while (!queue.offer(runnable, SHUTDOWN_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Posting queue has been shut down");
+                    }
+                }
+                if (executor.isShutdown() && queue.remove(runnable)) {
+                    throw new RejectedExecutionException("Posting queue has been shut down");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the posting queue", e);
+            }
+        }
+    }
+}
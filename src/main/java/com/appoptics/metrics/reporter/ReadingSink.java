@@ -0,0 +1,29 @@
+package com.appoptics.metrics.reporter;
+
+import java.util.List;
+
+/**
+ * Receives the readings taken during a report cycle.
+ */
+public interface ReadingSink {
+    /**
+     * Adds a single valued gauge.
+     *
+     * @param plan  the plan of the metric the reading was taken from
+     * @param name  the measure name, i.e. the plan name or one of its expanded names
+     * @param value the reading
+     */
+    void add(EmissionPlan plan, String name, double value);
+
+    /**
+     * Adds a complex gauge under the plan name.
+     */
+    void add(EmissionPlan plan, double sum, long count, double min, double max);
+
+    /**
+     * Submits whatever is still buffered once all readings of the cycle have been added.
+     *
+     * @return all batches submitted by this sink
+     */
+    List<Batch> flush() throws InterruptedException;
+}
@@ -0,0 +1,33 @@
+package com.appoptics.metrics.reporter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The names of metrics removed from the registry since the start of the previous report cycle.
+ * A report reads the metrics of a snapshot taken before it started, so these are the names it
+ * may still reach after the registry has dropped them, and for which it must not create state
+ * that only a removal would free.
+ */
+class RecentRemovals {
+    private Set<String> previous = new HashSet<String>();
+    private Set<String> current = new HashSet<String>();
+
+    synchronized void add(String name) {
+        current.add(name);
+    }
+
+    synchronized boolean contains(String name) {
+        return current.contains(name) || previous.contains(name);
+    }
+
+    /**
+     * Forgets the names removed before the previous cycle started; called at the start of a cycle.
+     */
+    synchronized void rotate() {
+        Set<String> forgotten = previous;
+        forgotten.clear();
+        previous = current;
+        current = forgotten;
+    }
+}
@@ -0,0 +1,72 @@
+package com.appoptics.metrics.reporter;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When reports run and which time their measures carry. Reports start at a period boundary of the
+ * wall clock, e.g. on the minute for a one minute period, plus a jitter that is fixed per
+ * instance, so that a fleet of reporters started at the same time spreads its posts over the
+ * period while every instance keeps posting at the same offset. Measure epochs can be aligned
+ * to the period boundary a report was scheduled for, so that all instances report the same
+ * timestamps.
+ */
+public class ReportSchedule {
+    private final boolean alignEpochs;
+    private final long maxJitterMillis;
+    private final String instanceId;
+
+    /**
+     * @param alignEpochs whether to round measure epochs down to a period boundary
+     * @param maxJitter   the upper bound of the per-instance delay after the period boundary,
+     *                    capped at the period
+     * @param instanceId  what the jitter is derived from, null for the process name, which
+     *                    contains the pid and host name
+     */
+    public ReportSchedule(boolean alignEpochs, long maxJitter, TimeUnit unit, String instanceId) {
+        if (maxJitter < 0) {
+            throw new IllegalArgumentException("Jitter may not be negative: " + maxJitter);
+        }
+        this.alignEpochs = alignEpochs;
+        this.maxJitterMillis = unit.toMillis(maxJitter);
+        this.instanceId = instanceId != null ? instanceId : ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    /**
+     * @return the delay until the first report, i.e. until the next period boundary plus this
+     * instance's jitter
+     */
+    long initialDelayMillis(long nowMillis, long periodMillis) {
+        long untilBoundary = periodMillis - nowMillis % periodMillis;
+        return (untilBoundary + jitterMillis(periodMillis)) % periodMillis;
+    }
+
+    /**
+     * @return this instance's offset after period boundaries, the same every time it is asked
+     */
+    long jitterMillis(long periodMillis) {
+        long bound = Math.min(maxJitterMillis, periodMillis - 1);
+        if (bound <= 0) {
+            return 0;
+        }
+        long hash = instanceId.hashCode() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return (hash >>> 1) % (bound + 1);
+    }
+
+    /**
+     * @return the epoch the measures of a report started at the supplied time carry: when aligned,
+     * the period boundary the report was scheduled after, i.e. before this instance's jitter. A
+     * report that starts up to a tenth of a period early, e.g. as the wall clock is adjusted, or
+     * up to nine tenths late still gets the boundary it was scheduled for.
+     */
+    long epoch(long nowMillis, long periodMillis) {
+        if (!alignEpochs || periodMillis <= 0) {
+            return nowMillis / 1000;
+        }
+        long scheduled = nowMillis - jitterMillis(periodMillis) + periodMillis / 10;
+        return scheduled / periodMillis * periodMillis / 1000;
+    }
+}
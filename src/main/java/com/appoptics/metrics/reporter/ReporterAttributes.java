@@ -2,13 +2,18 @@ package com.appoptics.metrics.reporter;
 
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
+import com.appoptics.metrics.client.DefaultPoster;
 import com.appoptics.metrics.client.Duration;
 import com.appoptics.metrics.client.IPoster;
 import com.appoptics.metrics.client.Tag;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 public class ReporterAttributes {
     String url = "https://api.appoptics.com";
@@ -21,13 +26,49 @@ public class ReporterAttributes {
     String prefix;
     String prefixDelimiter = ".";
     MetricExpansionConfig expansionConfig = MetricExpansionConfig.ALL;
+    List<ExpansionRule> expansionRules = new ArrayList<ExpansionRule>();
     boolean deleteIdleStats = true;
     boolean omitComplexGauges;
     Duration readTimeout;
     Duration connectTimeout;
     List<Tag> tags = new LinkedList<Tag>();
     IAppopticsClientFactory appopticsClientFactory = new DefaultAppopticsClientFactory();
+    boolean clientSupplied;
     RateConverter rateConverter;
     DurationConverter durationConverter;
     IPoster poster;
+    ScheduledExecutorService executor;
+    int reportParallelism = 1;
+    int maxBatchMeasures = 500;
+    int maxBatchBytes;
+    int maxInflightBatches;
+    int postingQueueCapacity;
+    PostingQueue.OverflowPolicy overflowPolicy = PostingQueue.OverflowPolicy.DROP_OLDEST;
+    File spoolFile;
+    long spoolMaxBytes;
+    int spoolReplayRate = 10;
+    RetryPolicy retryPolicy;
+    CycleBudget cycleBudget;
+    ReportSchedule schedule;
+    boolean streamingEncoding;
+    String selfMetricsPrefix;
+    boolean compress;
+    int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    int compressionThreshold = 1024;
+    private IPoster resolvedPoster;
+
+    /**
+     * @return the poster that sends requests, compressing them if configured
+     */
+    synchronized IPoster resolvePoster() {
+        if (resolvedPoster == null) {
+            IPoster base = poster != null ? poster : new DefaultPoster();
+            resolvedPoster = compress ? new GzipPoster(base, compressionLevel, compressionThreshold) : base;
+        }
+        return resolvedPoster;
+    }
+
+    synchronized void posterChanged() {
+        resolvedPoster = null;
+    }
 }
@@ -2,11 +2,15 @@ package com.appoptics.metrics.reporter;
 
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
+import com.appoptics.metrics.client.AppopticsClient;
 import com.appoptics.metrics.client.Duration;
 import com.appoptics.metrics.client.IPoster;
 import com.appoptics.metrics.client.Tag;
 
+import java.io.File;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import java.util.regex.Pattern;
 
 public class ReporterBuilder {
@@ -18,6 +22,14 @@ public class ReporterBuilder {
     }
 
     public AppopticsReporter build() {
+        if (atts.clientSupplied && (atts.streamingEncoding || atts.spoolFile != null || atts.retryPolicy != null)) {
+            throw new IllegalStateException("A supplied client cannot be combined with streaming encoding, "
+                    + "spooling or retries, which post payloads without the client; share a poster instead");
+        }
+        if (atts.clientSupplied && atts.compress) {
+            throw new IllegalStateException("A supplied client cannot be combined with compression, which "
+                    + "wraps the poster the client would be built with; compress the supplied client's poster instead");
+        }
         return new AppopticsReporter(atts);
     }
 
@@ -42,6 +54,83 @@ public class ReporterBuilder {
         return this;
     }
 
+    /**
+     * Runs the reports on the supplied executor instead of a thread of the reporter's own, so
+     * that many reporters in one JVM can share a few threads. The executor is not shut down when
+     * the reporter is stopped.
+     */
+    public ReporterBuilder setExecutor(ScheduledExecutorService executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor must not be null");
+        }
+        this.atts.executor = executor;
+        return this;
+    }
+
+    /**
+     * Posts measures with the supplied client instead of building one, e.g. to share a client
+     * between reporters with the same token. Settings the client is built from, such as the url,
+     * timeouts and poster, then do not apply to it.
+     * <p>
+     * Streaming encoding, spooling and retries post encoded payloads through the poster rather
+     * than the client, and compression wraps the poster the client would be built with, so
+     * building a reporter that combines any of them with a supplied client fails. Share a poster
+     * with {@link #setPoster(IPoster)} instead, or give the supplied client a {@link GzipPoster}.
+     */
+    public ReporterBuilder setClient(final AppopticsClient client) {
+        if (client == null) {
+            throw new IllegalArgumentException("Client must not be null");
+        }
+        this.atts.appopticsClientFactory = new IAppopticsClientFactory() {
+            @Override
+            public AppopticsClient build(ReporterAttributes atts) {
+                return client;
+            }
+        };
+        this.atts.clientSupplied = true;
+        return this;
+    }
+
+    /**
+     * Starts reports on period boundaries of the wall clock plus a jitter that is fixed per
+     * process, and gives measures the epoch of the boundary each report was scheduled after.
+     * Instances started together then spread their posts over the period, while reporting the
+     * same timestamps.
+     *
+     * @param maxJitter the upper bound of the delay after each period boundary
+     */
+    public ReporterBuilder setAlignedSchedule(long maxJitter, TimeUnit unit) {
+        return setAlignedSchedule(maxJitter, unit, null);
+    }
+
+    /**
+     * Like {@link #setAlignedSchedule(long, TimeUnit)}, deriving the jitter from the supplied id,
+     * e.g. a pod name, instead of the process name.
+     */
+    public ReporterBuilder setAlignedSchedule(long maxJitter, TimeUnit unit, String instanceId) {
+        this.atts.schedule = new ReportSchedule(true, maxJitter, unit, instanceId);
+        return this;
+    }
+
+    /**
+     * Adds a rule that overrides the expansion config for matching metrics. Rules are checked in
+     * the order they are added and the first match wins.
+     */
+    public ReporterBuilder addExpansionRule(ExpansionRule rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("Expansion rule must not be null");
+        }
+        this.atts.expansionRules.add(rule);
+        return this;
+    }
+
+    /**
+     * Adds a rule that overrides the expansion config for metrics whose name matches the regex.
+     */
+    public ReporterBuilder addExpansionRule(String nameRegex, MetricExpansionConfig config) {
+        return addExpansionRule(ExpansionRule.forName(Pattern.compile(nameRegex), config));
+    }
+
     public ReporterBuilder setDeleteIdleStats(boolean value) {
         this.atts.deleteIdleStats = value;
         return this;
@@ -96,8 +185,189 @@ public class ReporterBuilder {
         return this;
     }
 
+    /**
+     * Sends requests with the supplied poster. One poster may be passed to several reporters,
+     * which then share its connections.
+     */
     public ReporterBuilder setPoster(IPoster poster) {
         this.atts.poster = poster;
+        this.atts.posterChanged();
+        return this;
+    }
+
+    /**
+     * Splits each report cycle into the given number of shards that are collected and posted
+     * concurrently on a pool of that many threads. The default of 1 reports serially on the
+     * scheduler thread.
+     */
+    public ReporterBuilder setReportParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Report parallelism must be at least 1: " + parallelism);
+        }
+        this.atts.reportParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Caps the number of measures posted in a single request. Defaults to 500.
+     */
+    public ReporterBuilder setMaxBatchMeasures(int maxMeasures) {
+        if (maxMeasures < 1) {
+            throw new IllegalArgumentException("Max batch measures must be at least 1: " + maxMeasures);
+        }
+        this.atts.maxBatchMeasures = maxMeasures;
+        return this;
+    }
+
+    /**
+     * Caps the estimated encoded size of a single request. Defaults to 0, which means no limit.
+     */
+    public ReporterBuilder setMaxBatchBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max batch bytes may not be negative: " + maxBytes);
+        }
+        this.atts.maxBatchBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Sets how many batches may be posted at the same time. Defaults to the report parallelism,
+     * so that by default a serial reporter posts batches one after the other on the reporting
+     * thread and each shard of a parallel reporter can post while the others do.
+     */
+    public ReporterBuilder setMaxInflightBatches(int maxInflight) {
+        if (maxInflight < 1) {
+            throw new IllegalArgumentException("Max inflight batches must be at least 1: " + maxInflight);
+        }
+        this.atts.maxInflightBatches = maxInflight;
+        return this;
+    }
+
+    /**
+     * Posts batches from a bounded queue on separate threads, so that report cycles no longer wait
+     * on the network. The number of posting threads is set by {@link #setMaxInflightBatches(int)}.
+     *
+     * @param capacity the number of batches that may wait to be posted
+     * @param policy   what to do when the queue is full
+     */
+    public ReporterBuilder setPostingQueue(int capacity, PostingQueue.OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Posting queue capacity must be at least 1: " + capacity);
+        }
+        this.atts.postingQueueCapacity = capacity;
+        this.atts.overflowPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Spools payloads that fail to post with a retryable error to a memory-mapped file, and
+     * replays them once posting recovers. Replayed measures keep their original time.
+     *
+     * @param file     the spool file, created if it does not exist
+     * @param maxBytes the size of the spool file; payloads that do not fit are dropped
+     */
+    public ReporterBuilder setSpool(File file, long maxBytes) {
+        if (maxBytes <= MeasuresSpool.HEADER_BYTES + MeasuresSpool.RECORD_OVERHEAD_BYTES) {
+            throw new IllegalArgumentException("Spool size is too small: " + maxBytes);
+        }
+        this.atts.spoolFile = file;
+        this.atts.spoolMaxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Limits how many spooled payloads are replayed per report, so that a backlog does not flood
+     * the API when it recovers.
+     */
+    public ReporterBuilder setSpoolReplayRate(int payloadsPerReport) {
+        if (payloadsPerReport < 1) {
+            throw new IllegalArgumentException("Spool replay rate must be at least 1: " + payloadsPerReport);
+        }
+        this.atts.spoolReplayRate = payloadsPerReport;
+        return this;
+    }
+
+    /**
+     * Retries posts that fail with a retryable error, using exponential backoff with full jitter.
+     * Retries of a batch stop at the end of the reporting period it was collected in. Retry counts
+     * are reported as the counters {@code <name>.post.retries}, {@code <name>.post.retryRecoveries}
+     * and {@code <name>.post.retryGiveUps}.
+     *
+     * @param maxRetries the maximum number of times a failed post is retried
+     * @param baseDelay  the upper bound of the first backoff, which doubles on each retry
+     * @param maxDelay   the upper bound of any backoff
+     */
+    public ReporterBuilder setRetryPolicy(int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+        this.atts.retryPolicy = new RetryPolicy(maxRetries, baseDelay, maxDelay, unit);
+        return this;
+    }
+
+    /**
+     * Budgets the time of a report cycle. Cycles running out of budget shed percentiles and then
+     * rates, and if cycles keep overrunning, reports are sent every 2nd, 4th and at most 8th
+     * period. Counts and gauges are always reported, and the reporter recovers as cycles speed up.
+     * Changes are logged and counted as {@code <name>.cycle.degradations},
+     * {@code <name>.cycle.recoveries} and {@code <name>.cycle.skipped}.
+     *
+     * @param budget the time a cycle may take, typically a fraction of the period
+     */
+    public ReporterBuilder setCycleBudget(long budget, TimeUnit unit) {
+        this.atts.cycleBudget = new CycleBudget(budget, unit);
+        return this;
+    }
+
+    /**
+     * Gzips request bodies of at least 1024 bytes at the default compression level.
+     */
+    public ReporterBuilder setCompression(boolean compress) {
+        this.atts.compress = compress;
+        this.atts.posterChanged();
+        return this;
+    }
+
+    /**
+     * Gzips request bodies. Compression statistics are available from
+     * {@link AppopticsReporter#getGzipPoster()}.
+     *
+     * @param level    the compression level, from 0 to 9, or -1 for the default
+     * @param minBytes bodies smaller than this are posted uncompressed
+     */
+    public ReporterBuilder setCompression(int level, int minBytes) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between -1 and 9: " + level);
+        }
+        if (minBytes < 0) {
+            throw new IllegalArgumentException("Compression threshold may not be negative: " + minBytes);
+        }
+        this.atts.compress = true;
+        this.atts.compressionLevel = level;
+        this.atts.compressionThreshold = minBytes;
+        this.atts.posterChanged();
+        return this;
+    }
+
+    /**
+     * Streams readings straight into encoded request bodies instead of building measure objects
+     * for the client to serialize, which removes most of the allocation of a report cycle.
+     * Batches are then posted with the configured poster rather than through the client.
+     */
+    public ReporterBuilder setStreamingEncoding(boolean streaming) {
+        this.atts.streamingEncoding = streaming;
+        return this;
+    }
+
+    /**
+     * Registers metrics on the reporter's own cost in the reported registry: collection time per
+     * metric type, encode time, post latency, payload bytes, measure counts, post failures by cause
+     * and the sizes of the name cache and delta tracker. Timings describe the previous report.
+     *
+     * @param prefix the prefix of the metric names, e.g. "appoptics.reporter"
+     */
+    public ReporterBuilder setSelfMetrics(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            throw new IllegalArgumentException("Self metrics prefix must not be empty");
+        }
+        this.atts.selfMetricsPrefix = prefix;
         return this;
     }
 }
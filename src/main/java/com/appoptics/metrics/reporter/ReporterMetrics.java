@@ -0,0 +1,240 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.PostResult;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Timer;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * The reporter's measurements of its own cost. Stage timings, measure counts, post latencies and
+ * posted bytes accumulate while a report cycle runs and are published when it ends, so a cycle
+ * never reports on itself: the metrics read during a cycle describe the cycles before it.
+ * Recording touches counters and atomics, and queues post latencies, which may be recorded on
+ * posting threads, for the end of the cycle; latencies past a cap per cycle are counted as dropped.
+ * The post latency timer is reported as its count and a few percentiles, see
+ * {@link #expansionRule(String)}.
+ * <p>
+ * With streaming encoding the encode stage times writing the request bodies. Otherwise the client
+ * serializes the bodies while posting, and the stage times building its measures instead.
+ */
+public class ReporterMetrics {
+    static final int GAUGES = 0;
+    static final int COUNTERS = 1;
+    static final int HISTOGRAMS = 2;
+    static final int METERS = 3;
+    static final int TIMERS = 4;
+    private static final int ENCODE = 5;
+    private static final int MEASURES = 6;
+    private static final int REPORT = 7;
+    private static final int POST_BYTES = 8;
+    private static final int STATS = 9;
+    // post latencies waiting for the cycle to end, as many as the latency timer's window holds
+    private static final int PENDING_LATENCIES = 1024;
+    private static final MetricExpansionConfig LATENCY_EXPANSION = new MetricExpansionConfig(EnumSet.of(
+            ExpandedMetric.COUNT, ExpandedMetric.MEDIAN, ExpandedMetric.PCT_95, ExpandedMetric.PCT_99));
+    private static final String[] TYPE_NAMES = {"gauges", "counters", "histograms", "meters", "timers"};
+    private final AtomicLongArray current = new AtomicLongArray(STATS);
+    private final AtomicLongArray last = new AtomicLongArray(STATS);
+    private final Queue<Long> pendingLatencies = new ConcurrentLinkedQueue<Long>();
+    private final AtomicInteger pendingLatencyCount = new AtomicInteger();
+    private final Timer postLatency = new Timer(new SlidingWindowReservoir(PENDING_LATENCIES));
+    private final Counter droppedLatencies = new Counter();
+    private final Counter postBytes = new Counter();
+    private final Counter measures = new Counter();
+    private final Counter timeouts = new Counter();
+    private final Counter connectionFailures = new Counter();
+    private final Counter serverErrors = new Counter();
+    private final Counter throttled = new Counter();
+    private final Counter rejected = new Counter();
+    private final Counter otherFailures = new Counter();
+    private final Map<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+
+    /**
+     * @param streaming whether the reporter encodes request bodies itself, which names the encode
+     *                  stage {@code encode.nanos} rather than {@code build.nanos}
+     */
+    public ReporterMetrics(String prefix,
+                           boolean streaming,
+                           final NameCache nameCache,
+                           final TagLimiter tagLimiter,
+                           final DeltaTracker deltaTracker) {
+        for (int type = GAUGES; type <= TIMERS; type++) {
+            metrics.put(MetricRegistry.name(prefix, "collect", TYPE_NAMES[type], "nanos"), lastValue(type));
+        }
+        metrics.put(MetricRegistry.name(prefix, streaming ? "encode" : "build", "nanos"), lastValue(ENCODE));
+        metrics.put(MetricRegistry.name(prefix, "report", "nanos"), lastValue(REPORT));
+        metrics.put(MetricRegistry.name(prefix, "report", "measures"), lastValue(MEASURES));
+        metrics.put(MetricRegistry.name(prefix, "measures"), measures);
+        metrics.put(MetricRegistry.name(prefix, "post", "latency"), postLatency);
+        metrics.put(MetricRegistry.name(prefix, "post", "latency", "dropped"), droppedLatencies);
+        metrics.put(MetricRegistry.name(prefix, "post", "bytes"), postBytes);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "timeout"), timeouts);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "connection"), connectionFailures);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "server"), serverErrors);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "throttled"), throttled);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "rejected"), rejected);
+        metrics.put(MetricRegistry.name(prefix, "post", "failures", "other"), otherFailures);
+        metrics.put(MetricRegistry.name(prefix, "nameCache", "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return nameCache.size();
+            }
+        });
+        metrics.put(MetricRegistry.name(prefix, "tagLimiter", "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return tagLimiter.size();
+            }
+        });
+        metrics.put(MetricRegistry.name(prefix, "tagLimiter", "folded"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return tagLimiter.getFolded();
+            }
+        });
+        metrics.put(MetricRegistry.name(prefix, "deltaTracker", "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return deltaTracker.size();
+            }
+        });
+        metrics.put(MetricRegistry.name(prefix, "deltaTracker", "bytes"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return deltaTracker.getFootprint();
+            }
+        });
+    }
+
+    /**
+     * @return the rule that reports the post latency timer under the prefix as its count, median,
+     * 95th and 99th percentile rather than every expanded metric of a timer; it applies unless an
+     * earlier rule of the reporter matches the timer
+     */
+    static ExpansionRule expansionRule(String prefix) {
+        return ExpansionRule.forName(Pattern.compile(Pattern.quote(MetricRegistry.name(prefix, "post", "latency"))),
+                LATENCY_EXPANSION);
+    }
+
+    private Gauge<Long> lastValue(final int stat) {
+        return new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return last.get(stat);
+            }
+        };
+    }
+
+    public void register(MetricRegistry registry) {
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            registry.register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void remove(MetricRegistry registry) {
+        for (String name : metrics.keySet()) {
+            registry.remove(name);
+        }
+    }
+
+    /**
+     * @return the registered metrics by name
+     */
+    public Map<String, Metric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records the time spent collecting metrics of one type, see {@link #GAUGES} and friends.
+     *
+     * @return the current time, to start timing the next stage with
+     */
+    long collected(int type, long startNanos) {
+        long now = System.nanoTime();
+        current.addAndGet(type, now - startNanos);
+        return now;
+    }
+
+    /**
+     * Records the time spent encoding measures, or building them for the client, and their number.
+     */
+    void encoded(long nanos, int measureCount) {
+        current.addAndGet(ENCODE, nanos);
+        current.addAndGet(MEASURES, measureCount);
+    }
+
+    void posted(long nanos, int bytes) {
+        if (pendingLatencyCount.incrementAndGet() <= PENDING_LATENCIES) {
+            pendingLatencies.offer(nanos);
+        } else {
+            pendingLatencyCount.decrementAndGet();
+            droppedLatencies.inc();
+        }
+        current.addAndGet(POST_BYTES, bytes);
+    }
+
+    void failed(PostResult result) {
+        if (result.exception != null) {
+            Throwable cause = result.exception;
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof SocketTimeoutException) {
+                timeouts.inc();
+            } else if (cause instanceof IOException) {
+                connectionFailures.inc();
+            } else {
+                otherFailures.inc();
+            }
+            return;
+        }
+        int code = result.response != null ? result.response.getResponseCode() : 0;
+        if (code == 429) {
+            throttled.inc();
+        } else if (code >= 500) {
+            serverErrors.inc();
+        } else if (code >= 400) {
+            rejected.inc();
+        } else {
+            otherFailures.inc();
+        }
+    }
+
+    /**
+     * Publishes the stage timings, measure count and posts of the cycle that just ended and starts
+     * a new one.
+     */
+    void cycleEnded(long reportNanos) {
+        current.set(REPORT, reportNanos);
+        for (int stat = 0; stat < STATS; stat++) {
+            last.set(stat, current.getAndSet(stat, 0));
+        }
+        measures.inc(last.get(MEASURES));
+        postBytes.inc(last.get(POST_BYTES));
+        // latencies queued while draining are kept for the next cycle
+        int pending = pendingLatencyCount.get();
+        for (int i = 0; i < pending; i++) {
+            Long nanos = pendingLatencies.poll();
+            if (nanos == null) {
+                break;
+            }
+            pendingLatencyCount.decrementAndGet();
+            postLatency.update(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
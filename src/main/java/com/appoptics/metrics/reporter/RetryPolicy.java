@@ -0,0 +1,34 @@
+package com.appoptics.metrics.reporter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponential backoff with full jitter: before retry n (counting from zero) the poster sleeps a
+ * random time between zero and min(maxDelay, baseDelay * 2^n).
+ */
+public class RetryPolicy {
+    final int maxRetries;
+    final long baseDelayNanos;
+    final long maxDelayNanos;
+
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+        if (maxRetries < 1) {
+            throw new IllegalArgumentException("Max retries must be at least 1: " + maxRetries);
+        }
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Delays must satisfy 0 <= base <= max: " + baseDelay + ", " + maxDelay);
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayNanos = unit.toNanos(baseDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * @return the time to wait before the given retry, counting from zero
+     */
+    long backoffNanos(int retry, Random random) {
+        double ceiling = Math.min(maxDelayNanos, baseDelayNanos * Math.pow(2, retry));
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
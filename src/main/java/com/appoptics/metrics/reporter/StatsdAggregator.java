@@ -0,0 +1,434 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives metrics from other processes over UDP and aggregates them into a registry, so that
+ * short-lived processes need neither a reporter nor a token: a single aggregator reports for all
+ * of them. Lines use the StatsD protocol with DogStatsD style tags, one or more per packet,
+ * separated by newlines:
+ * <pre>
+ * name:value|type[|@sampleRate][|#tag:value,tag:value]
+ * </pre>
+ * Types map to metrics created through {@link Appoptics}, tagged with the line's tags:
+ * <ul>
+ * <li>{@code c} marks a meter, scaled up by the sample rate, so counts are reported per period</li>
+ * <li>{@code g} sets a gauge, or adds to it if the value is signed</li>
+ * <li>{@code ms} updates a timer, in milliseconds</li>
+ * <li>{@code h} updates a histogram</li>
+ * </ul>
+ * Timers and histograms use an {@link IntervalReservoir}, so their percentiles describe the
+ * values received since the previous report.
+ * Packets are received on a single thread, through a non-blocking channel. Lines that cannot be
+ * parsed are counted and dropped. The metric of each distinct name, type and tags is looked up
+ * once and then kept, so repeated lines go straight to their metric.
+ *
+ * @see StatsdEmitter
+ */
+public class StatsdAggregator implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(StatsdAggregator.class);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAX_PACKET_BYTES = 65507;
+    private static final Tag[] NO_TAGS = new Tag[0];
+    // bounds the lookups kept when tag values are unbounded; they are dropped and looked up again
+    private static final int MAX_KEPT_METRICS = 100000;
+    private final MetricRegistry registry;
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_BYTES);
+    private final byte[] packet = new byte[MAX_PACKET_BYTES];
+    private final List<Tag> tags = new ArrayList<Tag>();
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+    private final byte[] key = new byte[MAX_PACKET_BYTES];
+    private final MetricRegistryListener removals = new MetricRegistryListener.Base() {
+        @Override
+        public void onGaugeRemoved(String name) {
+            metrics.clear();
+        }
+
+        @Override
+        public void onHistogramRemoved(String name) {
+            metrics.clear();
+        }
+
+        @Override
+        public void onMeterRemoved(String name) {
+            metrics.clear();
+        }
+
+        @Override
+        public void onTimerRemoved(String name) {
+            metrics.clear();
+        }
+    };
+    private final Counter packets = new Counter();
+    private final Counter lines = new Counter();
+    private final Counter malformed = new Counter();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * A gauge whose value is set by the lines received.
+     */
+    public static class ReceivedGauge implements Gauge<Double> {
+        private volatile double value;
+
+        @Override
+        public Double getValue() {
+            return value;
+        }
+
+        void set(double value) {
+            this.value = value;
+        }
+
+        void add(double delta) {
+            // only the receiving thread writes
+            this.value = value + delta;
+        }
+    }
+
+    /**
+     * Binds the address and starts receiving.
+     *
+     * @param address the address to listen on, e.g. port 8125 on the loopback interface
+     */
+    public StatsdAggregator(MetricRegistry registry, InetSocketAddress address) throws IOException {
+        this.registry = registry;
+        registry.addListener(removals);
+        this.channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.bind(address);
+            this.selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            registry.removeListener(removals);
+            throw e;
+        }
+        this.thread = new DaemonThreadFactory("appoptics-statsd").newThread(new Runnable() {
+            @Override
+            public void run() {
+                receive();
+            }
+        });
+        thread.start();
+    }
+
+    /**
+     * Runs an aggregator that reports to AppOptics until the JVM exits.
+     * <p>
+     * Usage: {@code StatsdAggregator <token> [port, default 8125] [period in seconds, default 60]}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StatsdAggregator <token> [port] [period in seconds]");
+            System.exit(1);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8125;
+        int period = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        MetricRegistry registry = new MetricRegistry();
+        final AppopticsReporter reporter = Appoptics.reporter(registry, args[0]).start(period, TimeUnit.SECONDS);
+        final StatsdAggregator aggregator = new StatsdAggregator(registry, new InetSocketAddress(port));
+        log.info("Aggregating StatsD lines received on port {}", aggregator.getPort());
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                aggregator.close();
+                reporter.report();
+                reporter.stop();
+            }
+        }));
+        aggregator.thread.join();
+    }
+
+    private void receive() {
+        try {
+            while (running) {
+                selector.select();
+                selector.selectedKeys().clear();
+                while (channel.receive(buffer) != null) {
+                    buffer.flip();
+                    int length = buffer.remaining();
+                    buffer.get(packet, 0, length);
+                    buffer.clear();
+                    ingest(packet, length);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                log.error("Stopped receiving StatsD lines", e);
+            }
+        }
+    }
+
+    /**
+     * Aggregates the lines of a packet.
+     */
+    void ingest(byte[] data, int length) {
+        packets.inc();
+        int start = 0;
+        while (start < length) {
+            int end = indexOf(data, (byte) '\n', start, length);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                lines.inc();
+                if (!ingestLine(data, start, end)) {
+                    malformed.inc();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Dropping malformed line {}", new String(data, start, end - start, UTF_8));
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    private boolean ingestLine(byte[] data, int start, int end) {
+        int colon = indexOf(data, (byte) ':', start, end);
+        if (colon <= start) {
+            return false;
+        }
+        int valueEnd = indexOf(data, (byte) '|', colon + 1, end);
+        if (valueEnd < 0) {
+            return false;
+        }
+        int typeEnd = indexOf(data, (byte) '|', valueEnd + 1, end);
+        if (typeEnd < 0) {
+            typeEnd = end;
+        }
+        double sampleRate = 1;
+        int tagsStart = -1;
+        int tagsEnd = -1;
+        int section = typeEnd + 1;
+        while (section < end) {
+            int sectionEnd = indexOf(data, (byte) '|', section, end);
+            if (sectionEnd < 0) {
+                sectionEnd = end;
+            }
+            if (data[section] == '@') {
+                sampleRate = parseDouble(data, section + 1, sectionEnd);
+                if (!(sampleRate > 0 && sampleRate <= 1)) {
+                    return false;
+                }
+            } else if (data[section] == '#') {
+                tagsStart = section + 1;
+                tagsEnd = sectionEnd;
+            }
+            section = sectionEnd + 1;
+        }
+        double value = parseDouble(data, colon + 1, valueEnd);
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        // the line without its value and sample rate identifies the metric
+        int keyLength = append(data, start, colon, 0);
+        keyLength = append(data, valueEnd, typeEnd, keyLength);
+        if (tagsStart >= 0) {
+            key[keyLength++] = '|';
+            keyLength = append(data, tagsStart, tagsEnd, keyLength);
+        }
+        String metricKey = new String(key, 0, keyLength, UTF_8);
+        Metric metric = metrics.get(metricKey);
+        if (metric == null) {
+            metric = lookUp(data, start, colon, valueEnd + 1, typeEnd, tagsStart, tagsEnd);
+            if (metric == null) {
+                return false;
+            }
+            if (metrics.size() >= MAX_KEPT_METRICS) {
+                metrics.clear();
+            }
+            metrics.put(metricKey, metric);
+        }
+        return record(metric, value, sampleRate, data[colon + 1]);
+    }
+
+    private int append(byte[] data, int start, int end, int keyLength) {
+        System.arraycopy(data, start, key, keyLength, end - start);
+        return keyLength + end - start;
+    }
+
+    /**
+     * @return the metric of the line's name, type and tags, registering it if needed, or null if
+     * the type or the tags are invalid
+     */
+    private Metric lookUp(byte[] data, int start, int colon, int type, int typeEnd, int tagsStart, int tagsEnd) {
+        tags.clear();
+        if (tagsStart >= 0 && !parseTags(data, tagsStart, tagsEnd)) {
+            return null;
+        }
+        String name = new String(data, start, colon - start, UTF_8);
+        // like StatsD, report the values of each period, and record them in constant time
+        Appoptics metric = Appoptics.metric(registry, name).reservoir(IntervalReservoir.supplier());
+        if (!tags.isEmpty()) {
+            metric.tags(tags.toArray(NO_TAGS));
+        }
+        int typeLength = typeEnd - type;
+        try {
+            if (typeLength == 1 && data[type] == 'c') {
+                return metric.meter();
+            } else if (typeLength == 1 && data[type] == 'g') {
+                Gauge<?> gauge = metric.gauge(new ReceivedGauge());
+                return gauge instanceof ReceivedGauge ? gauge : null;
+            } else if (typeLength == 2 && data[type] == 'm' && data[type + 1] == 's') {
+                return metric.timer();
+            } else if (typeLength == 1 && data[type] == 'h') {
+                return metric.histogram();
+            }
+        } catch (RuntimeException e) {
+            // e.g. a metric of another type already has this name
+            return null;
+        }
+        return null;
+    }
+
+    private static boolean record(Metric metric, double value, double sampleRate, byte sign) {
+        if (metric instanceof Meter) {
+            ((Meter) metric).mark(Math.round(value / sampleRate));
+        } else if (metric instanceof ReceivedGauge) {
+            ReceivedGauge gauge = (ReceivedGauge) metric;
+            if (sign == '+' || sign == '-') {
+                gauge.add(value);
+            } else {
+                gauge.set(value);
+            }
+        } else if (metric instanceof Timer) {
+            ((Timer) metric).update(Math.round(value * 1000000), TimeUnit.NANOSECONDS);
+        } else if (metric instanceof Histogram) {
+            ((Histogram) metric).update(Math.round(value));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean parseTags(byte[] data, int start, int end) {
+        while (start < end) {
+            int tagEnd = indexOf(data, (byte) ',', start, end);
+            if (tagEnd < 0) {
+                tagEnd = end;
+            }
+            int colon = indexOf(data, (byte) ':', start, tagEnd);
+            if (colon <= start || colon == tagEnd - 1) {
+                // AppOptics tags need a value
+                return false;
+            }
+            tags.add(new Tag(new String(data, start, colon - start, UTF_8),
+                    new String(data, colon + 1, tagEnd - colon - 1, UTF_8)));
+            start = tagEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Parses integers without allocating, and anything else with {@link Double#parseDouble}.
+     *
+     * @return the value, or NaN if it is not a number
+     */
+    private static double parseDouble(byte[] data, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            return Double.NaN;
+        }
+        long integer = 0;
+        for (; i < end && i - start < 18; i++) {
+            byte digit = data[i];
+            if (digit < '0' || digit > '9') {
+                break;
+            }
+            integer = integer * 10 + digit - '0';
+        }
+        if (i == end) {
+            return negative ? -integer : integer;
+        }
+        try {
+            return Double.parseDouble(new String(data, start, end - start, UTF_8));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the port received on, e.g. when bound to port 0
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    public long getPackets() {
+        return packets.getCount();
+    }
+
+    public long getLines() {
+        return lines.getCount();
+    }
+
+    /**
+     * @return the number of lines dropped because they could not be parsed or recorded
+     */
+    public long getMalformed() {
+        return malformed.getCount();
+    }
+
+    /**
+     * Stops receiving. The metrics aggregated so far stay in the registry.
+     */
+    @Override
+    public void close() {
+        registry.removeListener(removals);
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            selector.close();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close StatsD channel", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.Counter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends metrics to a {@link StatsdAggregator} over UDP. Lines are buffered and sent several to a
+ * packet, when the packet is full, on {@link #flush()}, and by default at least once a second, so
+ * that lines are not held back while a process is idle. Short-lived processes should still flush
+ * or close the emitter before they exit. Sending never blocks: lines that cannot be sent, e.g.
+ * because no aggregator is listening, are counted and dropped.
+ * <p>
+ * StatsD has no escaping, so characters that delimit a line, i.e. {@code : | , @ #} and
+ * newlines, are replaced with underscores in names and tags.
+ */
+public class StatsdEmitter implements Closeable {
+    /**
+     * Fits an Ethernet MTU, so that packets are not fragmented
+     */
+    public static final int DEFAULT_PACKET_BYTES = 1432;
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final DatagramChannel channel;
+    private final ByteBuffer buffer;
+    private final StringBuilder line = new StringBuilder(128);
+    private final Counter sent = new Counter();
+    private final Counter dropped = new Counter();
+    private final ScheduledExecutorService flusher;
+    private int buffered;
+
+    public StatsdEmitter(InetSocketAddress address) throws IOException {
+        this(address, DEFAULT_PACKET_BYTES);
+    }
+
+    /**
+     * @param maxPacketBytes the size lines are buffered up to before they are sent
+     */
+    public StatsdEmitter(InetSocketAddress address, int maxPacketBytes) throws IOException {
+        this(address, maxPacketBytes, DEFAULT_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param maxPacketBytes the size lines are buffered up to before they are sent
+     * @param flushInterval  how often buffered lines are sent even if the packet is not full, on
+     *                       a daemon thread; 0 sends them only when the packet is full or on
+     *                       {@link #flush()}
+     */
+    public StatsdEmitter(InetSocketAddress address, int maxPacketBytes, long flushInterval, TimeUnit unit)
+            throws IOException {
+        if (maxPacketBytes < 1 || maxPacketBytes > 65507) {
+            throw new IllegalArgumentException("Packet size must be between 1 and 65507 bytes: " + maxPacketBytes);
+        }
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException("Flush interval may not be negative: " + flushInterval);
+        }
+        this.buffer = ByteBuffer.allocateDirect(maxPacketBytes);
+        this.channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (flushInterval > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("appoptics-statsd-flush"));
+            flusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, flushInterval, flushInterval, unit);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Adds to a count, reported per period by the aggregator.
+     */
+    public void count(String name, long delta, Tag... tags) {
+        emit(name, Long.toString(delta), "c", tags);
+    }
+
+    public synchronized void gauge(String name, double value, Tag... tags) {
+        if (value < 0) {
+            // a signed value changes a gauge rather than setting it, so reset it first
+            emit(name, "0", "g", tags);
+        }
+        emit(name, Double.toString(value), "g", tags);
+    }
+
+    public void timing(String name, long millis, Tag... tags) {
+        emit(name, Long.toString(millis), "ms", tags);
+    }
+
+    public void histogram(String name, long value, Tag... tags) {
+        emit(name, Long.toString(value), "h", tags);
+    }
+
+    private synchronized void emit(String name, String value, String type, Tag[] tags) {
+        line.setLength(0);
+        appendEscaped(name);
+        line.append(':').append(value).append('|').append(type);
+        for (int i = 0; i < tags.length; i++) {
+            line.append(i == 0 ? "|#" : ",");
+            appendEscaped(tags[i].name);
+            line.append(':');
+            appendEscaped(tags[i].value);
+        }
+        byte[] bytes = line.toString().getBytes(UTF_8);
+        int needed = bytes.length + (buffer.position() > 0 ? 1 : 0);
+        if (needed > buffer.remaining()) {
+            flush();
+            needed = bytes.length;
+        }
+        if (needed > buffer.remaining()) {
+            dropped.inc();
+            return;
+        }
+        if (buffer.position() > 0) {
+            buffer.put((byte) '\n');
+        }
+        buffer.put(bytes);
+        buffered++;
+    }
+
+    private void appendEscaped(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case ':':
+                case '|':
+                case ',':
+                case '@':
+                case '#':
+                case '\n':
+                case '\r':
+                    line.append('_');
+                    break;
+                default:
+                    line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Sends the buffered lines.
+     */
+    public synchronized void flush() {
+        if (buffered == 0) {
+            return;
+        }
+        buffer.flip();
+        try {
+            if (channel.write(buffer) > 0) {
+                sent.inc(buffered);
+            } else {
+                dropped.inc(buffered);
+            }
+        } catch (IOException e) {
+            dropped.inc(buffered);
+        } finally {
+            buffer.clear();
+            buffered = 0;
+        }
+    }
+
+    /**
+     * @return the number of lines sent
+     */
+    public long getSent() {
+        return sent.getCount();
+    }
+
+    /**
+     * @return the number of lines that could not be sent
+     */
+    public long getDropped() {
+        return dropped.getCount();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+/**
+ * A {@link Reservoir} for metrics that are updated by many threads at once. Each thread records
+ * into one of several {@link LogLinearHistogram} stripes, picked by its thread id, so concurrent
+ * updates rarely touch the same memory and never take a lock. Taking a snapshot drains all
+ * stripes, so like {@link IntervalReservoir} each snapshot reports the values recorded since the
+ * previous one; a value recorded while the stripes are drained lands in the next interval.
+ * <p>
+ * Memory is fixed at the stripe count times the size of a histogram. The stripes default to a
+ * coarser histogram of 578 buckets, about 4.6KB, and to one stripe per processor up to 16, so up
+ * to about 74KB per metric; every snapshot reads all of those buckets.
+ */
+public class StripedReservoir implements Reservoir {
+    /**
+     * 16 buckets per power of two, for a relative error below 6.3%
+     */
+    public static final int DEFAULT_PRECISION_BITS = 5;
+    private static final Supplier<Reservoir> SUPPLIER = new Supplier<Reservoir>() {
+        @Override
+        public Reservoir get() {
+            return new StripedReservoir();
+        }
+    };
+    private final LogLinearHistogram[] stripes;
+    private final int mask;
+
+    /**
+     * @return a supplier for {@link Appoptics#reservoir(Supplier)} or {@link Appoptics#defaultReservoir}
+     */
+    public static Supplier<Reservoir> supplier() {
+        return SUPPLIER;
+    }
+
+    public StripedReservoir() {
+        this(defaultStripeCount(), new LogLinearHistogram(DEFAULT_PRECISION_BITS, LogLinearHistogram.DEFAULT_MAX_VALUE));
+    }
+
+    /**
+     * @param stripes   the number of stripes, rounded up to a power of two
+     * @param histogram a histogram whose buckets and range each stripe uses
+     */
+    public StripedReservoir(int stripes, LogLinearHistogram histogram) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripe count must be at least 1: " + stripes);
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        this.stripes = new LogLinearHistogram[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = histogram.emptyCopy();
+        }
+        this.mask = count - 1;
+    }
+
+    private static int defaultStripeCount() {
+        return Math.min(16, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (LogLinearHistogram stripe : stripes) {
+            size += stripe.totalCount();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        stripes[stripeOf(Thread.currentThread().getId())].record(value);
+    }
+
+    private int stripeOf(long threadId) {
+        // spread sequential thread ids over the stripes
+        long hash = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Drains the stripes.
+     *
+     * @return the values recorded since the previous snapshot
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        long[] counts = new long[stripes[0].bucketCount()];
+        for (LogLinearHistogram stripe : stripes) {
+            stripe.drainTo(counts, true);
+        }
+        return stripes[0].snapshot(counts);
+    }
+}
@@ -0,0 +1,121 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.Counter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of distinct tag sets the fluent helper registers, per metric name and in total.
+ * Once a cap is reached, new tag sets of a metric are folded into an overflow series whose tag
+ * values are all {@link #OVERFLOW_VALUE}, so unbounded tag values such as user ids cannot grow the
+ * registry, the name cache and the delta tracker without bound.
+ * <p>
+ * Only registrations are checked: metrics that are already registered are resolved by
+ * {@link MetricHandles} without consulting the limiter. The caps are soft, concurrent
+ * registrations may overshoot them by the number of registering threads.
+ */
+public class TagLimiter {
+    public static final String OVERFLOW_VALUE = "__other__";
+    private final ConcurrentMap<String, AtomicInteger> perName = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final Counter folded = new Counter();
+    private volatile int maxPerName = Integer.MAX_VALUE;
+    private volatile int maxTotal = Integer.MAX_VALUE;
+
+    /**
+     * @param maxPerName the number of tag sets each metric name may have, unlimited by default
+     */
+    public void setMaxTagSetsPerName(int maxPerName) {
+        if (maxPerName < 1) {
+            throw new IllegalArgumentException("Max tag sets per name must be positive: " + maxPerName);
+        }
+        this.maxPerName = maxPerName;
+    }
+
+    /**
+     * @param maxTotal the number of tag sets all metrics together may have, unlimited by default
+     */
+    public void setMaxTagSets(int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("Max tag sets must be positive: " + maxTotal);
+        }
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxTagSetsPerName() {
+        return maxPerName;
+    }
+
+    public int getMaxTagSets() {
+        return maxTotal;
+    }
+
+    /**
+     * @return whether a new tag set may be registered for the signal's metric name
+     */
+    public boolean admits(Signal signal) {
+        if (total.get() >= maxTotal) {
+            return false;
+        }
+        AtomicInteger count = perName.get(signal.name);
+        return count == null || count.get() < maxPerName;
+    }
+
+    /**
+     * Counts a fold.
+     *
+     * @return the overflow signal with the same name and tag names
+     */
+    public Signal fold(Signal signal) {
+        folded.inc();
+        List<Tag> tags = new ArrayList<Tag>(signal.tags.size());
+        for (Tag tag : signal.tags) {
+            tags.add(new Tag(tag.name, OVERFLOW_VALUE));
+        }
+        return new Signal(signal.name, tags, signal.overrideTags);
+    }
+
+    void added(Signal signal) {
+        AtomicInteger count = perName.get(signal.name);
+        if (count == null) {
+            AtomicInteger existing = perName.putIfAbsent(signal.name, count = new AtomicInteger());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+        total.incrementAndGet();
+    }
+
+    void removed(Signal signal) {
+        AtomicInteger count = perName.get(signal.name);
+        if (count != null) {
+            count.decrementAndGet();
+        }
+        total.decrementAndGet();
+    }
+
+    /**
+     * @return the number of registered tag sets, including overflow series
+     */
+    public int size() {
+        return total.get();
+    }
+
+    public int size(String name) {
+        AtomicInteger count = perName.get(name);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the number of registrations folded into an overflow series
+     */
+    public long getFolded() {
+        return folded.getCount();
+    }
+}
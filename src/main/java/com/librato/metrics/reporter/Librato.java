@@ -25,13 +25,21 @@ public class Librato {
             return new ExponentiallyDecayingReservoir();
         }
     });
-    private static final NameCache nameCache = new NameCache(5000);
     private final MetricRegistry registry;
     private final String name;
     private List<Tag> tags = Collections.emptyList();
     private boolean overrideTags;
     private Supplier<Reservoir> reservoir = defaultReservoir.get();
 
+    /**
+     * The cache of encoded names for tagged metrics, which is shared with {@link Appoptics} since
+     * both encode names the same way. Its size may be changed and its hit, miss and eviction
+     * counts read through the returned instance.
+     */
+    public static NameCache nameCache() {
+        return Appoptics.nameCache();
+    }
+
     public static Librato metric(String name) {
         MetricRegistry registry = Appoptics.defaultRegistry.get();
         return metric(registry, name);
@@ -242,7 +250,7 @@ public class Librato {
 
 
     private String encodeName(final Signal signal) {
-        return nameCache.get(signal, new com.appoptics.metrics.reporter.Supplier<String>() {
+        return nameCache().get(signal, new com.appoptics.metrics.reporter.Supplier<String>() {
             @Override
             public String get() {
                 return Json.serialize(signal);
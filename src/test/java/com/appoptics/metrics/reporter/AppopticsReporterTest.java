@@ -4,15 +4,34 @@ import com.codahale.metrics.*;
 import com.appoptics.metrics.client.*;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class AppopticsReporterTest {
@@ -20,6 +39,8 @@ public class AppopticsReporterTest {
     AppopticsClient client = mock(AppopticsClient.class);
     ReporterAttributes atts = new ReporterAttributes();
     ArgumentCaptor<Measures> captor = ArgumentCaptor.forClass(Measures.class);
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
 
     @Before
     public void setUp() throws Exception {
@@ -89,6 +110,23 @@ public class AppopticsReporterTest {
         assertThat(measures.isEmpty()).isFalse();
     }
 
+    @Test
+    public void testSkipsMetricsRemovedAfterTheSnapshot() throws Exception {
+        atts.registry = registry;
+        registry.counter("kept").inc();
+        registry.meter("gone").mark();
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        SortedMap<String, Meter> meters = registry.getMeters();
+        registry.remove("gone");
+        reporter.report(registry.getGauges(),
+                registry.getCounters(),
+                registry.getHistograms(),
+                meters,
+                registry.getTimers());
+        HashSet<IMeasure> measures = new HashSet<IMeasure>(captor.getValue().getMeasures());
+        assertThat(measures).containsOnly(new Measure("kept", 1));
+    }
+
     @Test
     public void testTaggedCounter() throws Exception {
         Counter counter = Appoptics.metric(registry, "foo").tag("a", "b").counter();
@@ -139,6 +177,135 @@ public class AppopticsReporterTest {
                 new Measure("foo.15MinuteRate", timer.getFifteenMinuteRate()));
     }
 
+    @Test
+    public void testTakesNoSnapshotsOrRatesWhenOnlyCountsAreReported() throws Exception {
+        atts.expansionConfig = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.COUNT));
+        atts.omitComplexGauges = true;
+        Timer timer = mock(Timer.class);
+        when(timer.getCount()).thenReturn(3L);
+        Histogram histogram = mock(Histogram.class);
+        when(histogram.getCount()).thenReturn(4L);
+        registry.register("timer", timer);
+        registry.register("histogram", histogram);
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        report(reporter);
+        HashSet<IMeasure> measures = new HashSet<IMeasure>(captor.getValue().getMeasures());
+        assertThat(measures).containsOnly(
+                new Measure("timer.count", 3),
+                new Measure("histogram.count", 4));
+        verify(timer, never()).getSnapshot();
+        verify(histogram, never()).getSnapshot();
+        verify(timer, never()).getMeanRate();
+        verify(timer, never()).getOneMinuteRate();
+        verify(timer, never()).getFiveMinuteRate();
+        verify(timer, never()).getFifteenMinuteRate();
+    }
+
+    @Test
+    public void testComputesOnlyTheRatesReported() throws Exception {
+        atts.expansionConfig = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.RATE_1_MINUTE));
+        Meter meter = mock(Meter.class);
+        when(meter.getCount()).thenReturn(1L);
+        when(meter.getOneMinuteRate()).thenReturn(2d);
+        registry.register("foo", meter);
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        report(reporter);
+        HashSet<IMeasure> measures = new HashSet<IMeasure>(captor.getValue().getMeasures());
+        assertThat(measures).containsOnly(new Measure("foo.1MinuteRate", 2));
+        verify(meter, never()).getMeanRate();
+        verify(meter, never()).getFiveMinuteRate();
+        verify(meter, never()).getFifteenMinuteRate();
+    }
+
+    @Test
+    public void testKeepsCountsAndShedsExpansionsWhenOverBudget() throws Exception {
+        final long[] now = {0};
+        atts.cycleBudget = new CycleBudget(100, TimeUnit.NANOSECONDS, new Clock() {
+            @Override
+            public long getTick() {
+                return now[0] += 80;
+            }
+        });
+        Timer timer = mock(Timer.class);
+        when(timer.getCount()).thenReturn(3L);
+        registry.register("timer", timer);
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        report(reporter);
+        HashSet<IMeasure> measures = new HashSet<IMeasure>(captor.getValue().getMeasures());
+        assertThat(measures).containsOnly(new Measure("timer.count", 3));
+        verify(timer, never()).getSnapshot();
+        verify(timer, never()).getMeanRate();
+        assertThat(reporter.getCycleBudget().getDegradations().getCount()).isEqualTo(1);
+        assertThat(atts.registry.getCounters()).containsKey("appoptics.cycle.degradations");
+    }
+
+    @Test
+    public void testReportersShareAnExecutorAndClient() throws Exception {
+        final CountDownLatch posts = new CountDownLatch(4);
+        AppopticsClient shared = mock(AppopticsClient.class);
+        when(shared.postMeasures(any(Measures.class))).thenAnswer(new Answer<PostMeasuresResult>() {
+            @Override
+            public PostMeasuresResult answer(InvocationOnMock invocation) {
+                posts.countDown();
+                return new PostMeasuresResult();
+            }
+        });
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        List<AppopticsReporter> reporters = new ArrayList<AppopticsReporter>();
+        for (int i = 0; i < 2; i++) {
+            MetricRegistry registry = new MetricRegistry();
+            registry.counter("foo").inc();
+            reporters.add(AppopticsReporter.builder(registry, "token")
+                    .setName("reporter" + i)
+                    .setExecutor(executor)
+                    .setClient(shared)
+                    .start(10, TimeUnit.MILLISECONDS));
+        }
+        assertThat(posts.await(10, TimeUnit.SECONDS)).isTrue();
+        reporters.get(0).stop();
+        assertThat(executor.isShutdown()).isFalse();
+        reporters.get(1).stop();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejectsASuppliedClientWithPayloadPosting() throws Exception {
+        ReporterBuilder builder = AppopticsReporter.builder(registry, "token")
+                .setClient(client)
+                .setStreamingEncoding(true);
+        try {
+            builder.build();
+            Assertions.fail("Expected the supplied client to be rejected");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("streaming encoding");
+        }
+        builder.setStreamingEncoding(false).setCompression(true);
+        try {
+            builder.build();
+            Assertions.fail("Expected the supplied client to be rejected");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("compression");
+        }
+        builder.setCompression(false).build().stop();
+    }
+
+    @Test
+    public void testReportersSharingARegistryRegisterTheirCountersUnderDistinctNames() throws Exception {
+        ReporterBuilder builder = AppopticsReporter.builder(registry, "token")
+                .setClient(client)
+                .setCycleBudget(10, TimeUnit.SECONDS);
+        AppopticsReporter first = builder.build();
+        AppopticsReporter second = builder.build();
+        assertThat(first.getMetricsName()).isEqualTo("appoptics");
+        assertThat(second.getMetricsName()).isEqualTo("appoptics-2");
+        assertThat(registry.getCounters()).containsKeys("appoptics.cycle.skipped", "appoptics-2.cycle.skipped");
+
+        second.stop();
+        assertThat(registry.getCounters()).containsKey("appoptics.cycle.skipped")
+                .doesNotContainKey("appoptics-2.cycle.skipped");
+        first.stop();
+    }
+
     @Test
     public void testTaggedTimer() throws Exception {
         Timer timer = mock(Timer.class);
@@ -255,4 +422,405 @@ public class AppopticsReporterTest {
                 new Measure("foo.99th", 42, new Tag("a", "z")),
                 new Measure("foo.999th", 42, new Tag("a", "z")));
     }
+
+    @Test
+    public void testShardedReportMatchesSerialReport() throws Exception {
+        AppopticsReporter serialReporter = new AppopticsReporter(atts);
+        atts.reportParallelism = 4;
+        AppopticsReporter shardedReporter = new AppopticsReporter(atts);
+        for (int i = 0; i < 100; i++) {
+            registry.counter("counter" + i).inc(i);
+            Appoptics.metric(registry, "histo" + i).tag("i", i).histogram(new Histogram(new UniformReservoir())).update(i);
+        }
+        report(serialReporter);
+        HashSet<IMeasure> serial = allMeasures(captor);
+        assertThat(serial).hasSize(100 + 100 * 8);
+
+        ArgumentCaptor<Measures> shardCaptor = ArgumentCaptor.forClass(Measures.class);
+        when(client.postMeasures(shardCaptor.capture())).thenReturn(new PostMeasuresResult());
+        report(shardedReporter);
+        assertThat(shardCaptor.getAllValues()).hasSize(4);
+        assertThat(allMeasures(shardCaptor)).isEqualTo(serial);
+    }
+
+    @Test
+    public void testSplitsMeasuresIntoBatches() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            registry.counter("counter" + i).inc();
+        }
+        atts.maxBatchMeasures = 10;
+        report(new AppopticsReporter(atts));
+        assertThat(captor.getAllValues()).hasSize(3);
+        assertThat(captor.getAllValues().get(0).getMeasures()).hasSize(10);
+        assertThat(allMeasures(captor)).hasSize(25);
+    }
+
+    @Test
+    public void testCapsBatchesByEncodedSize() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            registry.counter("counter" + i).inc();
+        }
+        atts.maxBatchBytes = 200;
+        report(new AppopticsReporter(atts));
+        assertThat(captor.getAllValues().size()).isGreaterThan(5);
+        assertThat(allMeasures(captor)).hasSize(25);
+    }
+
+    @Test
+    public void testPostsBatchesConcurrently() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            registry.counter("counter" + i).inc();
+        }
+        atts.maxBatchMeasures = 10;
+        atts.maxInflightBatches = 4;
+        AtomicInteger concurrent = new AtomicInteger();
+        ArgumentCaptor<Measures> concurrentCaptor = ArgumentCaptor.forClass(Measures.class);
+        when(client.postMeasures(concurrentCaptor.capture())).thenAnswer(overlapping(4, concurrent));
+        report(new AppopticsReporter(atts));
+        assertThat(concurrent.get()).isEqualTo(4);
+        assertThat(concurrentCaptor.getAllValues()).hasSize(10);
+        assertThat(allMeasures(concurrentCaptor)).hasSize(100);
+    }
+
+    @Test
+    public void testShardsPostConcurrentlyByDefault() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            registry.counter("counter" + i).inc();
+        }
+        atts.reportParallelism = 4;
+        AtomicInteger concurrent = new AtomicInteger();
+        ArgumentCaptor<Measures> concurrentCaptor = ArgumentCaptor.forClass(Measures.class);
+        when(client.postMeasures(concurrentCaptor.capture())).thenAnswer(overlapping(4, concurrent));
+        report(new AppopticsReporter(atts));
+        assertThat(concurrent.get()).isEqualTo(4);
+        assertThat(allMeasures(concurrentCaptor)).hasSize(100);
+    }
+
+    /**
+     * Holds each post until the given number of posts are in flight, or for a short timeout, and
+     * records the highest number of posts seen in flight at once.
+     */
+    private static Answer<PostMeasuresResult> overlapping(int posts, final AtomicInteger maxConcurrent) {
+        final CountDownLatch latch = new CountDownLatch(posts);
+        final AtomicInteger active = new AtomicInteger();
+        return new Answer<PostMeasuresResult>() {
+            @Override
+            public PostMeasuresResult answer(InvocationOnMock invocation) throws Throwable {
+                int now = active.incrementAndGet();
+                while (true) {
+                    int max = maxConcurrent.get();
+                    if (now <= max || maxConcurrent.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+                latch.countDown();
+                latch.await(200, TimeUnit.MILLISECONDS);
+                active.decrementAndGet();
+                return new PostMeasuresResult();
+            }
+        };
+    }
+
+    @Test
+    public void testSpoolsFailedPostsAndReplaysThemOnRecovery() throws Exception {
+        final List<byte[]> replayed = new ArrayList<byte[]>();
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                replayed.add(payload);
+                return response(200);
+            }
+        };
+        atts.token = "token";
+        atts.spoolFile = folder.newFile();
+        atts.spoolMaxBytes = 4096;
+        byte[] payload = "{\"time\":1}".getBytes("UTF-8");
+        PostMeasuresResult failed = new PostMeasuresResult();
+        failed.results.add(new PostResult(false, payload, response(503)));
+        when(client.postMeasures(captor.capture())).thenReturn(failed);
+        registry.counter("foo").inc();
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+
+        report(reporter);
+        assertThat(reporter.getSpool().size()).isEqualTo(1);
+        report(reporter);
+        assertThat(replayed).isEmpty();
+        assertThat(reporter.getSpool().size()).isEqualTo(2);
+
+        when(client.postMeasures(captor.capture())).thenReturn(new PostMeasuresResult());
+        report(reporter);
+        report(reporter);
+        assertThat(replayed).containsExactly(payload, payload);
+        assertThat(reporter.getSpool().isEmpty()).isTrue();
+        reporter.stop();
+    }
+
+    @Test
+    public void testDoesNotReplayAfterACycleWithAnyFailedBatch() throws Exception {
+        final List<byte[]> replayed = new ArrayList<byte[]>();
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                replayed.add(payload);
+                return response(200);
+            }
+        };
+        atts.token = "token";
+        atts.spoolFile = folder.newFile();
+        atts.spoolMaxBytes = 4096;
+        atts.maxBatchMeasures = 1;
+        PostMeasuresResult failed = new PostMeasuresResult();
+        failed.results.add(new PostResult(false, "{\"time\":1}".getBytes("UTF-8"), response(503)));
+        when(client.postMeasures(captor.capture())).thenReturn(failed, new PostMeasuresResult(),
+                failed, new PostMeasuresResult());
+        registry.counter("a").inc();
+        registry.counter("b").inc();
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+
+        report(reporter);
+        report(reporter);
+        assertThat(replayed).isEmpty();
+        assertThat(reporter.getSpool().size()).isEqualTo(2);
+
+        when(client.postMeasures(captor.capture())).thenReturn(new PostMeasuresResult());
+        report(reporter);
+        assertThat(replayed).hasSize(2);
+        reporter.stop();
+    }
+
+    @Test
+    public void testKeepsUnpostedReplaysAtTheHeadOfTheSpool() throws Exception {
+        final byte[] first = "{\"time\":1}".getBytes("UTF-8");
+        final byte[] second = "{\"time\":2}".getBytes("UTF-8");
+        final List<byte[]> replayed = new ArrayList<byte[]>();
+        final List<Integer> spooledWhilePosting = new ArrayList<Integer>();
+        final AtomicReference<AppopticsReporter> reporterRef = new AtomicReference<AppopticsReporter>();
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                replayed.add(payload);
+                spooledWhilePosting.add(reporterRef.get().getSpool().size());
+                return response(replayed.size() == 1 ? 503 : 200);
+            }
+        };
+        atts.token = "token";
+        atts.spoolFile = folder.newFile();
+        atts.spoolMaxBytes = 4096;
+        MeasuresSpool spool = new MeasuresSpool(atts.spoolFile, atts.spoolMaxBytes);
+        spool.append(first);
+        spool.append(second);
+        spool.close();
+        registry.counter("foo").inc();
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        reporterRef.set(reporter);
+
+        report(reporter);
+        assertThat(replayed).containsExactly(first);
+        assertThat(reporter.getSpool().size()).isEqualTo(2);
+        assertThat(reporter.getSpool().peek()).isEqualTo(first);
+
+        // the failed replay made posting unhealthy for one cycle
+        report(reporter);
+        report(reporter);
+        assertThat(replayed).containsExactly(first, first, second);
+        assertThat(spooledWhilePosting).containsExactly(2, 2, 1);
+        assertThat(reporter.getSpool().isEmpty()).isTrue();
+        reporter.stop();
+    }
+
+    @Test
+    public void testReplaysThroughThePostingQueue() throws Exception {
+        final List<String> threads = new CopyOnWriteArrayList<String>();
+        final CountDownLatch replayed = new CountDownLatch(1);
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                threads.add(Thread.currentThread().getName());
+                replayed.countDown();
+                return response(200);
+            }
+        };
+        atts.token = "token";
+        atts.spoolFile = folder.newFile();
+        atts.spoolMaxBytes = 4096;
+        atts.postingQueueCapacity = 10;
+        MeasuresSpool spool = new MeasuresSpool(atts.spoolFile, atts.spoolMaxBytes);
+        spool.append("{\"time\":1}".getBytes("UTF-8"));
+        spool.close();
+        registry.counter("foo").inc();
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+
+        report(reporter);
+        assertThat(replayed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(threads).hasSize(1);
+        assertThat(threads.get(0)).startsWith("appoptics-post");
+        assertThat(reporter.getSpool().isEmpty()).isTrue();
+        reporter.stop();
+    }
+
+    @Test
+    public void testStreamingEncodingMatchesClientSerialization() throws Exception {
+        atts.token = "token";
+        atts.tags.add(new Tag("root", "tag"));
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        final List<byte[]> payloads = capturePayloads();
+        atts.streamingEncoding = true;
+        atts.maxBatchBytes = 600;
+        AppopticsReporter streamingReporter = new AppopticsReporter(atts);
+        for (int i = 0; i < 20; i++) {
+            registry.counter("counter" + i).inc(i);
+            Appoptics.metric(registry, "histo" + i).tag("i", i).histogram(new Histogram(new UniformReservoir())).update(i);
+        }
+
+        report(reporter);
+        HashSet<Object> expected = new HashSet<Object>();
+        for (Measures measures : captor.getAllValues()) {
+            for (IMeasure measure : measures.getMeasures()) {
+                expected.add(Json.decode(Json.serialize(measure.toMap()), Map.class));
+            }
+        }
+        report(streamingReporter);
+        HashSet<Object> streamed = new HashSet<Object>();
+        for (byte[] payload : payloads) {
+            assertThat(payload.length).isLessThanOrEqualTo(600);
+            Map<?, ?> decoded = Json.decode(new String(payload, "UTF-8"), Map.class);
+            assertThat(decoded.get("time")).isNotNull();
+            streamed.addAll((List<?>) decoded.get("measurements"));
+        }
+        assertThat(payloads.size()).isGreaterThan(1);
+        assertThat(streamed).hasSize(20 + 20 * 8).isEqualTo(expected);
+    }
+
+    @Test
+    public void testStreamingEncodingSanitizesTagsLikeTheClient() throws Exception {
+        String longName = "tag name with spaces & symbols/" + repeat('n', 80);
+        String longValue = "value \"with\" |,: and \u00e9 " + repeat('v', 300);
+        atts.token = "token";
+        atts.tags.add(new Tag("root tag!", longValue));
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        final List<byte[]> payloads = capturePayloads();
+        atts.streamingEncoding = true;
+        AppopticsReporter streamingReporter = new AppopticsReporter(atts);
+        Appoptics.metric(registry, "dirty").tag(longName, longValue).counter().inc(3);
+        Appoptics.metric(registry, "dirty.histo").tag("a*b", "c|d").histogram(new Histogram(new UniformReservoir())).update(5);
+
+        report(reporter);
+        HashSet<String> expected = new HashSet<String>();
+        for (Measures measures : captor.getAllValues()) {
+            for (IMeasure measure : measures.getMeasures()) {
+                expected.add(canonical(Json.decode(Json.serialize(measure.toMap()), Map.class)));
+            }
+        }
+        report(streamingReporter);
+        HashSet<String> streamed = new HashSet<String>();
+        for (byte[] payload : payloads) {
+            Map<?, ?> decoded = Json.decode(new String(payload, "UTF-8"), Map.class);
+            for (Object measure : (List<?>) decoded.get("measurements")) {
+                streamed.add(canonical(measure));
+            }
+        }
+        assertThat(streamed).hasSize(1 + 8).isEqualTo(expected);
+        assertThat(streamed.toString()).doesNotContain(longName).doesNotContain(longValue);
+    }
+
+    private static String repeat(char c, int times) {
+        StringBuilder builder = new StringBuilder(times);
+        for (int i = 0; i < times; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the JSON of a decoded value with its object keys sorted, so that bodies can be
+     * compared byte for byte regardless of the order fields were written in
+     */
+    private static String canonical(Object decoded) {
+        return Json.serialize(sorted(decoded));
+    }
+
+    private static Object sorted(Object decoded) {
+        if (decoded instanceof Map) {
+            TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) decoded).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), sorted(entry.getValue()));
+            }
+            return sorted;
+        }
+        return decoded;
+    }
+
+    @Test
+    public void testSelfMetricsDescribeThePreviousReport() throws Exception {
+        atts.registry = registry;
+        atts.selfMetricsPrefix = "self";
+        AppopticsReporter reporter = new AppopticsReporter(atts);
+        for (int i = 0; i < 10; i++) {
+            registry.counter("counter" + i).inc();
+        }
+        report(reporter);
+        int firstReportMeasures = captor.getValue().getMeasures().size();
+        assertThat(captor.getValue().getMeasures()).contains(
+                new Measure("self.report.measures", 0), new Measure("self.measures", 0));
+        assertThat(reporter.getReporterMetrics().getMetrics())
+                .containsKeys("self.post.latency", "self.build.nanos")
+                .doesNotContainKey("self.encode.nanos");
+        assertThat(registry.getTimers().get("self.post.latency").getCount()).isEqualTo(1);
+
+        report(reporter);
+        assertThat(captor.getValue().getMeasures()).contains(
+                new Measure("self.report.measures", firstReportMeasures),
+                new Measure("self.measures", firstReportMeasures));
+        List<String> latencyNames = new ArrayList<String>();
+        for (IMeasure measure : captor.getValue().getMeasures()) {
+            String name = (String) measure.toMap().get("name");
+            if (name.startsWith("self.post.latency")) {
+                latencyNames.add(name);
+            }
+        }
+        assertThat(latencyNames).containsOnly("self.post.latency", "self.post.latency.count",
+                "self.post.latency.median", "self.post.latency.95th", "self.post.latency.99th",
+                "self.post.latency.dropped");
+        reporter.stop();
+        assertThat(registry.getNames()).doesNotContain("self.report.measures");
+    }
+
+    private List<byte[]> capturePayloads() {
+        final List<byte[]> payloads = new ArrayList<byte[]>();
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                payloads.add(payload);
+                return response(200);
+            }
+        };
+        return payloads;
+    }
+
+    private static HttpResponse response(final int code) {
+        return new HttpResponse() {
+            @Override
+            public int getResponseCode() {
+                return code;
+            }
+
+            @Override
+            public byte[] getResponseBody() {
+                return "{}".getBytes();
+            }
+        };
+    }
+
+    private HashSet<IMeasure> allMeasures(ArgumentCaptor<Measures> captor) {
+        HashSet<IMeasure> measures = new HashSet<IMeasure>();
+        for (Measures captured : captor.getAllValues()) {
+            measures.addAll(captured.getMeasures());
+        }
+        return measures;
+    }
 }
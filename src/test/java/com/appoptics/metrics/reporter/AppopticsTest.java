@@ -1,6 +1,8 @@
 package com.appoptics.metrics.reporter;
 
+import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.appoptics.metrics.client.Tag;
 import org.junit.Test;
@@ -117,4 +119,19 @@ public class AppopticsTest {
         boolean removed = Appoptics.metric(registry, "test").remove();
         assertThat(removed).isFalse();
     }
+
+    @Test
+    public void testResolvesNewMetricAfterRemoval() {
+        Meter meter = Appoptics.metric(registry, "test").tag("foo", "bar").meter();
+        assertThat(Appoptics.metric(registry, "test").tag("foo", "bar").meter()).isSameAs(meter);
+
+        Appoptics.metric(registry, "test").tag("foo", "bar").remove();
+        Meter replacement = Appoptics.metric(registry, "test").tag("foo", "bar").meter();
+        assertThat(replacement).isNotSameAs(meter);
+        assertThat(registry.getMeters().values()).containsOnly(replacement);
+
+        Counter counter = Appoptics.metric(registry, "untagged").counter();
+        registry.remove("untagged");
+        assertThat(Appoptics.metric(registry, "untagged").counter()).isNotSameAs(counter);
+    }
 }
@@ -0,0 +1,79 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BucketedWindowReservoirTest {
+    long now = TimeUnit.MINUTES.toNanos(5);
+    Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return now;
+        }
+    };
+    BucketedWindowReservoir reservoir =
+            new BucketedWindowReservoir(60, TimeUnit.SECONDS, 6, new LogLinearHistogram(), clock);
+
+    @Test
+    public void testKeepsValuesWithinTheWindow() throws Exception {
+        reservoir.update(1);
+        advance(30);
+        reservoir.update(2);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(1, 2);
+
+        advance(35);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(2);
+        advance(30);
+        assertThat(reservoir.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRecyclesBuckets() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(i);
+            advance(1);
+        }
+        assertThat(reservoir.size()).isBetween(50, 60);
+        assertThat(reservoir.getSnapshot().getMin()).isGreaterThanOrEqualTo(40);
+    }
+
+    @Test
+    public void testWindowCanBeChanged() throws Exception {
+        reservoir.update(1);
+        reservoir.setWindow(10, TimeUnit.SECONDS);
+        assertThat(reservoir.size()).isEqualTo(0);
+        reservoir.update(2);
+        advance(11);
+        assertThat(reservoir.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testHandlesNegativeTicks() throws Exception {
+        now = -TimeUnit.MINUTES.toNanos(5);
+        reservoir.update(7);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(7);
+    }
+
+    @Test
+    public void testWindowUsesBucketsWhenEnabled() throws Exception {
+        Appoptics.bucketedWindows.set(true);
+        try {
+            Histogram histogram = Appoptics.metric(new MetricRegistry(), "foo")
+                    .window(1, TimeUnit.MINUTES)
+                    .histogram();
+            assertThat(histogram.getSnapshot()).isInstanceOf(BucketSnapshot.class);
+        } finally {
+            Appoptics.bucketedWindows.set(false);
+        }
+    }
+
+    private void advance(int seconds) {
+        now += TimeUnit.SECONDS.toNanos(seconds);
+    }
+}
@@ -0,0 +1,118 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Clock;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CycleBudgetTest {
+    long now;
+    Clock clock = new Clock() {
+        @Override
+        public long getTick() {
+            return now;
+        }
+    };
+    CycleBudget budget = new CycleBudget(100, TimeUnit.NANOSECONDS, clock);
+
+    @Test
+    public void testShedsExpansionsAsTheCycleRunsOutOfBudget() throws Exception {
+        assertThat(budget.startCycle()).isTrue();
+        assertThat(budget.percentiles()).isTrue();
+        assertThat(budget.rates()).isTrue();
+        now += 60;
+        assertThat(budget.percentiles()).isFalse();
+        assertThat(budget.rates()).isTrue();
+        now += 20;
+        assertThat(budget.rates()).isFalse();
+        budget.endCycle();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.FULL);
+    }
+
+    @Test
+    public void testDegradesWhileCyclesOverrunAndWidensTheInterval() throws Exception {
+        overrun();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.NO_PERCENTILES);
+        assertThat(budget.startCycle()).isTrue();
+        assertThat(budget.percentiles()).isFalse();
+        assertThat(budget.rates()).isTrue();
+        now += 101;
+        budget.endCycle();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.NO_RATES);
+        assertThat(budget.interval()).isEqualTo(1);
+
+        overrun();
+        assertThat(budget.interval()).isEqualTo(2);
+        assertThat(budget.startCycle()).isFalse();
+        assertThat(budget.startCycle()).isTrue();
+        assertThat(budget.getSkippedCycles().getCount()).isEqualTo(1);
+        for (int i = 0; i < 10; i++) {
+            now += 101;
+            budget.endCycle();
+        }
+        assertThat(budget.interval()).isEqualTo(8);
+        assertThat(budget.getDegradations().getCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void testRecoversOnceCyclesAreFastAgain() throws Exception {
+        overrun();
+        overrun();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.NO_RATES);
+        for (int i = 1; i < CycleBudget.RECOVERY_CYCLES; i++) {
+            fast();
+            assertThat(budget.getLevel()).isEqualTo(CycleBudget.NO_RATES);
+        }
+        fast();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.NO_PERCENTILES);
+        for (int i = 0; i < CycleBudget.RECOVERY_CYCLES; i++) {
+            fast();
+        }
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.FULL);
+        fast();
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.FULL);
+        assertThat(budget.getRecoveries().getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testDoesNotFlapUnderAlternatingLoad() throws Exception {
+        overrun();
+        for (int i = 0; i < 20; i++) {
+            fast();
+            overrun();
+        }
+        assertThat(budget.getRecoveries().getCount()).isEqualTo(0);
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.MAX_LEVEL);
+
+        for (int i = 0; i < 20; i++) {
+            fast();
+            fast();
+            slowButWithinBudget();
+        }
+        assertThat(budget.getRecoveries().getCount()).isEqualTo(0);
+        assertThat(budget.getLevel()).isEqualTo(CycleBudget.MAX_LEVEL);
+    }
+
+    private void overrun() {
+        while (!budget.startCycle()) {
+        }
+        now += 101;
+        budget.endCycle();
+    }
+
+    private void slowButWithinBudget() {
+        while (!budget.startCycle()) {
+        }
+        now += 60;
+        budget.endCycle();
+    }
+
+    private void fast() {
+        while (!budget.startCycle()) {
+        }
+        now += 10;
+        budget.endCycle();
+    }
+}
@@ -1,6 +1,6 @@
 package com.appoptics.metrics.reporter;
 
-import com.appoptics.metrics.reporter.DeltaTracker;
+import com.codahale.metrics.MetricRegistry;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -73,4 +73,66 @@ public class DeltaTrackerTest {
         assertThat(converter.peekDelta("foo", 1), equalTo(1L));
         assertThat(converter.peekDelta("foo", 1), equalTo(1L));
     }
+
+    @Test
+    public void testTracksBySlot() throws Exception {
+        int slot = converter.slot("foo");
+        assertThat(converter.slot("foo"), is(slot));
+        assertThat(converter.getDelta(slot, 3), is(3L));
+        assertThat(converter.peekDelta(slot, 5), is(2L));
+        assertThat(converter.getDelta("foo", 5), is(2L));
+    }
+
+    @Test
+    public void testFreesSlotsOfRemovedMetrics() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.addListener(converter);
+        registry.meter("foo").mark(5);
+        int slot = converter.slot("foo");
+        assertThat(converter.getDelta(slot, 5), is(5L));
+        assertThat(converter.size(), is(1));
+
+        registry.remove("foo");
+        assertThat(converter.size(), is(0));
+        // the slot is not handed out again until it has been reclaimed
+        assertThat(converter.slot("bar"), not(slot));
+        converter.reclaim();
+        assertThat(converter.slot("baz"), is(slot));
+        assertThat(converter.getDelta("baz", 2), is(2L));
+    }
+
+    @Test
+    public void testReadingDoesNotAssignSlots() throws Exception {
+        assertThat(converter.peekDelta("foo", 3), equalTo(3L));
+        assertThat(converter.slotOf("foo"), is(DeltaTracker.NO_SLOT));
+        assertThat(converter.size(), is(0));
+    }
+
+    @Test
+    public void testDoesNotTrackMetricsRemovedDuringAReport() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        registry.addListener(converter);
+        registry.meter("foo").mark(5);
+        assertThat(converter.slotOf("foo"), not(DeltaTracker.NO_SLOT));
+
+        registry.remove("foo");
+        // a report that took its snapshot before the removal still reads the meter
+        assertThat(converter.reportSlot("foo"), is(DeltaTracker.NO_SLOT));
+        converter.reclaim();
+        assertThat(converter.reportSlot("foo"), is(DeltaTracker.NO_SLOT));
+        assertThat(converter.size(), is(0));
+
+        // until two cycles have started, when no report can still hold the old meter
+        converter.reclaim();
+        assertThat(converter.reportSlot("foo"), not(DeltaTracker.NO_SLOT));
+    }
+
+    @Test
+    public void testReportsFootprint() throws Exception {
+        long empty = converter.getFootprint();
+        for (int i = 0; i < 5000; i++) {
+            converter.getDelta("foo" + i, i);
+        }
+        assertThat(converter.getFootprint() > empty, is(true));
+    }
 }
@@ -0,0 +1,109 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmissionPlanTest {
+    MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void testBuildsPrefixedNames() throws Exception {
+        EmissionPlan plan = EmissionPlan.compile("foo", "app", ".",
+                new MetricExpansionConfig(EnumSet.of(ExpandedMetric.PCT_95, ExpandedMetric.COUNT)),
+                Collections.<Tag>emptyList());
+        assertThat(plan.name).isEqualTo("app.foo");
+        assertThat(plan.nameOf(ExpandedMetric.PCT_95)).isEqualTo("app.foo.95th");
+        assertThat(plan.nameOf(ExpandedMetric.COUNT)).isEqualTo("app.foo.count");
+        assertThat(plan.nameOf(ExpandedMetric.MEDIAN)).isNull();
+        assertThat(plan.tags).isEmpty();
+    }
+
+    @Test
+    public void testMergesSignalAndReporterTags() throws Exception {
+        Appoptics.metric(registry, "foo").tag("a", "b").counter();
+        EmissionPlan plan = EmissionPlan.compile(registry.getCounters().firstKey(), null, ".",
+                MetricExpansionConfig.ALL, asList(new Tag("root", "tag")));
+        assertThat(plan.name).isEqualTo("foo");
+        assertThat(plan.tags).containsExactly(new Tag("a", "b"), new Tag("root", "tag"));
+    }
+
+    @Test
+    public void testOmitsReporterTagsWhenOverridden() throws Exception {
+        Appoptics.metric(registry, "foo").tag("a", "b").doNotInheritTags().counter();
+        EmissionPlan plan = EmissionPlan.compile(registry.getCounters().firstKey(), null, ".",
+                MetricExpansionConfig.ALL, asList(new Tag("root", "tag")));
+        assertThat(plan.tags).containsExactly(new Tag("a", "b"));
+    }
+
+    @Test
+    public void testEvictsPlansOfRemovedMetrics() throws Exception {
+        EmissionPlans plans = new EmissionPlans(null, ".", MetricExpansionConfig.ALL, Collections.<Tag>emptyList());
+        registry.addListener(plans);
+        Appoptics.metric(registry, "foo").tag("a", "b").counter();
+        EmissionPlan plan = plans.get(registry.getCounters().firstKey());
+        assertThat(plans.get(registry.getCounters().firstKey())).isSameAs(plan);
+
+        Appoptics.metric(registry, "foo").tag("a", "b").remove();
+        assertThat(plans.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDoesNotCachePlansOfMetricsRemovedDuringAReport() throws Exception {
+        EmissionPlans plans = new EmissionPlans(null, ".", MetricExpansionConfig.ALL, Collections.<Tag>emptyList());
+        registry.addListener(plans);
+        registry.counter("foo");
+        registry.remove("foo");
+
+        // a report that took its snapshot before the removal still reads the counter
+        assertThat(plans.get("foo").name).isEqualTo("foo");
+        plans.cycleStarted();
+        assertThat(plans.get("foo").name).isEqualTo("foo");
+        assertThat(plans.size()).isEqualTo(0);
+
+        // until two cycles have started, when no report can still hold the old counter
+        plans.cycleStarted();
+        plans.get("foo");
+        assertThat(plans.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUsesTheFirstMatchingExpansionRule() throws Exception {
+        MetricExpansionConfig p99 = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.PCT_99));
+        MetricExpansionConfig median = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.MEDIAN));
+        MetricExpansionConfig count = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.COUNT));
+        EmissionPlans plans = new EmissionPlans(null, ".", count,
+                asList(ExpansionRule.forTag("tier", Pattern.compile("critical|gold"), p99),
+                        ExpansionRule.forName(Pattern.compile("checkout\\..*"), median),
+                        ExpansionRule.forName(Pattern.compile(".*"), p99)),
+                Collections.<Tag>emptyList());
+        Appoptics.metric(registry, "checkout.latency").tag("tier", "gold").timer();
+        EmissionPlan tagged = plans.get(registry.getTimers().firstKey());
+        assertThat(tagged.nameOf(ExpandedMetric.PCT_99)).isEqualTo("checkout.latency.99th");
+        assertThat(tagged.nameOf(ExpandedMetric.MEDIAN)).isNull();
+
+        EmissionPlan named = plans.get("checkout.latency");
+        assertThat(named.nameOf(ExpandedMetric.MEDIAN)).isEqualTo("checkout.latency.median");
+        assertThat(named.nameOf(ExpandedMetric.PCT_99)).isNull();
+        assertThat(named.percentiles).isTrue();
+        assertThat(named.rates).isFalse();
+    }
+
+    @Test
+    public void testUsesTheExpansionConfigWhenNoRuleMatches() throws Exception {
+        MetricExpansionConfig count = new MetricExpansionConfig(EnumSet.of(ExpandedMetric.COUNT));
+        EmissionPlan plan = EmissionPlan.compile("foo", null, ".", count,
+                asList(ExpansionRule.forName(Pattern.compile("bar"), MetricExpansionConfig.ALL)),
+                Collections.<Tag>emptyList());
+        assertThat(plan.nameOf(ExpandedMetric.COUNT)).isEqualTo("foo.count");
+        assertThat(plan.nameOf(ExpandedMetric.RATE_MEAN)).isNull();
+        assertThat(plan.percentiles).isFalse();
+    }
+}
@@ -0,0 +1,79 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipPosterTest {
+    Map<String, String> postedHeaders;
+    byte[] postedPayload;
+    IPoster delegate = new IPoster() {
+        @Override
+        public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                 Map<String, String> headers, byte[] payload) {
+            postedHeaders = headers;
+            postedPayload = payload;
+            return null;
+        }
+    };
+
+    @Test
+    public void testCompressesLargeBodies() throws Exception {
+        GzipPoster poster = new GzipPoster(delegate, 6, 100);
+        byte[] payload = payload(200);
+        poster.post("url", null, null, Collections.singletonMap("Content-Type", "application/json"), payload);
+        assertThat(postedHeaders).containsEntry("Content-Encoding", "gzip");
+        assertThat(postedHeaders).containsEntry("Content-Type", "application/json");
+        assertThat(gunzip(postedPayload)).isEqualTo(payload);
+        assertThat(poster.getCompressed()).isEqualTo(1);
+        assertThat(poster.getCompressionRatio()).isLessThan(0.2);
+        assertThat(poster.getCompressionTimeNanos()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    public void testReusesDeflaters() throws Exception {
+        GzipPoster poster = new GzipPoster(delegate, -1, 0);
+        byte[] payload = payload(50);
+        byte[] first = poster.compress(payload);
+        assertThat(poster.compress(payload)).isEqualTo(first);
+        assertThat(gunzip(poster.compress(payload(10)))).isEqualTo(payload(10));
+    }
+
+    @Test
+    public void testSkipsSmallBodies() throws Exception {
+        GzipPoster poster = new GzipPoster(delegate, 6, 100);
+        byte[] payload = payload(1);
+        poster.post("url", null, null, Collections.<String, String>emptyMap(), payload);
+        assertThat(postedHeaders).doesNotContainKey("Content-Encoding");
+        assertThat(postedPayload).isSameAs(payload);
+        assertThat(poster.getSkipped()).isEqualTo(1);
+        assertThat(poster.getCompressed()).isEqualTo(0);
+    }
+
+    private static byte[] payload(int measures) {
+        StringBuilder json = new StringBuilder("{\"measurements\":[");
+        for (int i = 0; i < measures; i++) {
+            json.append("{\"name\":\"some.service.requests\",\"value\":").append(i).append(",\"tags\":{\"host\":\"web-1\"}},");
+        }
+        return json.append("]}").toString().getBytes();
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws Exception {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read; (read = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
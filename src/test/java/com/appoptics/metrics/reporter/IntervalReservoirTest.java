@@ -0,0 +1,60 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntervalReservoirTest {
+    IntervalReservoir reservoir = new IntervalReservoir();
+
+    @Test
+    public void testSnapshotsDescribeSingleIntervals() throws Exception {
+        reservoir.update(10);
+        reservoir.update(20);
+        assertThat(reservoir.size()).isEqualTo(2);
+        Snapshot first = reservoir.getSnapshot();
+        assertThat(first.getValues()).containsExactly(10, 20);
+
+        reservoir.update(30);
+        Snapshot second = reservoir.getSnapshot();
+        assertThat(second.getValues()).containsExactly(30);
+        assertThat(reservoir.getSnapshot().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testLosesNoValuesToConcurrentSnapshots() throws Exception {
+        final int threads = 4;
+        final int updates = 200000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        reservoir.update(i & 1023);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        long total = 0;
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            total += reservoir.getSnapshot().size();
+        }
+        total += reservoir.getSnapshot().size();
+        executor.shutdown();
+        assertThat(total).isEqualTo((long) threads * updates);
+    }
+
+    @Test
+    public void testSupplierCreatesIndependentReservoirs() throws Exception {
+        assertThat(IntervalReservoir.supplier().get()).isNotSameAs(IntervalReservoir.supplier().get());
+    }
+}
@@ -0,0 +1,74 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class LogLinearHistogramTest {
+    static final long ONE_HOUR = 3600L * 1000 * 1000 * 1000;
+    LogLinearHistogram histogram = new LogLinearHistogram(7, ONE_HOUR);
+
+    @Test
+    public void testBucketValuesAreWithinPrecision() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = (long) Math.pow(10, random.nextDouble() * 12);
+            long represented = histogram.valueAt(histogram.indexOf(value));
+            assertThat((double) represented).isCloseTo(value, offset(value / 64.0 + 1));
+        }
+        for (long value = 0; value < 128; value++) {
+            assertThat(histogram.valueAt(histogram.indexOf(value))).isEqualTo(value);
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() throws Exception {
+        int previous = 0;
+        for (long value = 0; value < 1000000; value++) {
+            int index = histogram.indexOf(value);
+            assertThat(index - previous).isBetween(0, 1);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void testClampsOutOfRangeValues() throws Exception {
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getMin()).isEqualTo(0);
+        assertThat((double) snapshot.getMax())
+                .isCloseTo(ONE_HOUR, offset(ONE_HOUR / 64.0));
+    }
+
+    @Test
+    public void testDefaultsKeepHistogramsSmall() throws Exception {
+        LogLinearHistogram defaults = new LogLinearHistogram();
+        assertThat(defaults.bucketCount()).isEqualTo(1123);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long value = (long) (random.nextDouble() * LogLinearHistogram.DEFAULT_MAX_VALUE);
+            long represented = defaults.valueAt(defaults.indexOf(value));
+            assertThat((double) represented).isCloseTo(value, offset(value / 32.0 + 1));
+        }
+    }
+
+    @Test
+    public void testSnapshotStatistics() throws Exception {
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.size()).isEqualTo(10000);
+        assertThat(snapshot.getMedian()).isCloseTo(5000000, offset(5000000 / 64.0));
+        assertThat(snapshot.get99thPercentile()).isCloseTo(9900000, offset(9900000 / 64.0));
+        assertThat(snapshot.getMean()).isCloseTo(5000500, offset(5000500 / 64.0));
+        assertThat((double) snapshot.getMin()).isCloseTo(1000, offset(16.0));
+        assertThat(snapshot.getValues()).hasSize(10000);
+        assertThat(snapshot.getStdDev()).isCloseTo(2886895, offset(2886895 / 32.0));
+    }
+}
@@ -0,0 +1,69 @@
+package com.appoptics.metrics.reporter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeasuresSpoolTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysInOrder() throws Exception {
+        MeasuresSpool spool = new MeasuresSpool(folder.newFile(), 1024);
+        spool.append(bytes("one"));
+        spool.append(bytes("two"));
+        assertThat(spool.size()).isEqualTo(2);
+        assertThat(spool.peek()).isEqualTo(bytes("one"));
+        assertThat(spool.peek()).isEqualTo(bytes("one"));
+        spool.commit();
+        assertThat(spool.peek()).isEqualTo(bytes("two"));
+        spool.commit();
+        assertThat(spool.peek()).isNull();
+        assertThat(spool.getBytes()).isEqualTo(0);
+        assertThat(spool.getReplayed()).isEqualTo(2);
+        spool.close();
+    }
+
+    @Test
+    public void testSurvivesReopen() throws Exception {
+        File file = folder.newFile();
+        MeasuresSpool spool = new MeasuresSpool(file, 1024);
+        spool.append(bytes("one"));
+        spool.append(bytes("two"));
+        spool.commit();
+        spool.close();
+
+        spool = new MeasuresSpool(file, 1024);
+        assertThat(spool.size()).isEqualTo(1);
+        assertThat(spool.peek()).isEqualTo(bytes("two"));
+        spool.close();
+    }
+
+    @Test
+    public void testCompactsAndDropsWhenFull() throws Exception {
+        int recordBytes = MeasuresSpool.RECORD_OVERHEAD_BYTES + 10;
+        MeasuresSpool spool = new MeasuresSpool(folder.newFile(), MeasuresSpool.HEADER_BYTES + 3 * recordBytes);
+        for (int i = 0; i < 3; i++) {
+            assertThat(spool.append(bytes("payload-0" + i))).isTrue();
+        }
+        assertThat(spool.append(bytes("payload-03"))).isFalse();
+        assertThat(spool.getDropped()).isEqualTo(1);
+
+        spool.commit();
+        assertThat(spool.append(bytes("payload-04"))).isTrue();
+        assertThat(spool.peek()).isEqualTo(bytes("payload-01"));
+        spool.commit();
+        spool.commit();
+        assertThat(spool.peek()).isEqualTo(bytes("payload-04"));
+        spool.close();
+    }
+
+    private static byte[] bytes(String value) throws Exception {
+        return value.getBytes("UTF-8");
+    }
+}
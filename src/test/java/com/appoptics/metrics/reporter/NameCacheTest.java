@@ -1,5 +1,7 @@
 package com.appoptics.metrics.reporter;
 
+import com.codahale.metrics.MetricRegistry;
+import com.librato.metrics.reporter.Librato;
 import org.junit.Test;
 
 import java.util.concurrent.atomic.AtomicInteger;
@@ -25,4 +27,57 @@ public class NameCacheTest {
         assertThat(invocations.get()).isEqualTo(1);
 
     }
+
+    @Test
+    public void testCountsHitsAndMisses() throws Exception {
+        NameCache cache = new NameCache(10);
+        Supplier<String> supplier = new Supplier<String>() {
+            @Override
+            public String get() {
+                return "value";
+            }
+        };
+        cache.get(new Signal("foo"), supplier);
+        cache.get(new Signal("foo"), supplier);
+        cache.get(new Signal("bar"), supplier);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictsBeyondMaxSize() throws Exception {
+        NameCache cache = new NameCache(100);
+        for (int i = 0; i < 1000; i++) {
+            final String name = "name-" + i;
+            cache.get(new Signal(name), new Supplier<String>() {
+                @Override
+                public String get() {
+                    return name;
+                }
+            });
+        }
+        assertThat(cache.size()).isEqualTo(100);
+        assertThat(cache.getEvictions()).isEqualTo(900);
+
+        cache.setMaxSize(50);
+        cache.get(new Signal("one-more"), new Supplier<String>() {
+            @Override
+            public String get() {
+                return "one-more";
+            }
+        });
+        assertThat(cache.size()).isEqualTo(50);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testLibratoSharesTheAppopticsCache() throws Exception {
+        assertThat(Librato.nameCache()).isSameAs(Appoptics.nameCache());
+        MetricRegistry registry = new MetricRegistry();
+        Librato.metric(registry, "shared").tag("a", "b").counter();
+        long hits = Appoptics.nameCache().getHits();
+        Librato.metric(registry, "shared").tag("a", "b").counter();
+        assertThat(Appoptics.nameCache().getHits()).isGreaterThan(hits);
+    }
 }
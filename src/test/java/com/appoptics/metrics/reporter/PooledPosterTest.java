@@ -0,0 +1,166 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class PooledPosterTest {
+    final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    final List<String> bodies = new CopyOnWriteArrayList<String>();
+    final Map<String, String> headers = Collections.singletonMap("Authorization", "Basic dG9rZW46");
+    final Duration timeout = new Duration(5, TimeUnit.SECONDS);
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger maxActive = new AtomicInteger();
+    HttpServer server;
+    ExecutorService serverThreads = Executors.newCachedThreadPool();
+    PooledPoster poster = new PooledPoster(2, 1, TimeUnit.MINUTES, 4);
+    String url;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/measurements", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                int now = active.incrementAndGet();
+                while (maxActive.get() < now && !maxActive.compareAndSet(maxActive.get(), now)) {
+                }
+                bodies.add(read(exchange.getRequestBody()));
+                int code = "fail".equals(bodies.get(bodies.size() - 1)) ? 503 : 200;
+                byte[] response = "{}".getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                active.decrementAndGet();
+                exchange.sendResponseHeaders(code, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverThreads);
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/measurements";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        poster.close();
+        server.stop(0);
+        serverThreads.shutdown();
+    }
+
+    @Test
+    public void testReusesConnectionsBetweenPosts() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            HttpResponse response = poster.post(url, timeout, timeout, headers, ("post" + i).getBytes("UTF-8"));
+            assertThat(response.getResponseCode()).isEqualTo(200);
+            assertThat(new String(response.getResponseBody(), "UTF-8")).isEqualTo("{}");
+        }
+        assertThat(bodies).containsExactly("post0", "post1", "post2", "post3", "post4");
+        // the server may close a kept-alive connection, but most posts must reuse one
+        assertThat(clientPorts.size()).isLessThan(bodies.size());
+        assertThat(poster.getIdleConnectionCount()).isBetween(1, 2);
+    }
+
+    @Test
+    public void testKeepsAClientPerTimeouts() throws Exception {
+        Duration shortTimeout = new Duration(2, TimeUnit.SECONDS);
+        for (int i = 0; i < 3; i++) {
+            poster.post(url, timeout, timeout, headers, "long".getBytes("UTF-8"));
+            poster.post(url, shortTimeout, shortTimeout, headers, "short".getBytes("UTF-8"));
+        }
+        assertThat(poster.getTimedClientCount()).isEqualTo(2);
+        assertThat(bodies).hasSize(6);
+    }
+
+    @Test
+    public void testPostsOnDaemonThreads() throws Exception {
+        poster.post(url, timeout, timeout, headers, "daemon".getBytes("UTF-8"));
+        // OkHttp names a dispatcher thread after the call it runs, and restores the name after
+        int dispatchers = 0;
+        for (int attempt = 0; attempt < 100 && dispatchers == 0; attempt++) {
+            Thread.sleep(10);
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("appoptics-pooled-poster")) {
+                    dispatchers++;
+                    assertThat(thread.isDaemon()).isTrue();
+                }
+            }
+        }
+        assertThat(dispatchers).isGreaterThan(0);
+    }
+
+    @Test
+    public void testReturnsErrorResponses() throws Exception {
+        HttpResponse response = poster.post(url, timeout, timeout, headers, "fail".getBytes("UTF-8"));
+        assertThat(response.getResponseCode()).isEqualTo(503);
+    }
+
+    @Test
+    public void testBoundsConcurrentPosts() throws Exception {
+        ExecutorService posters = Executors.newFixedThreadPool(8);
+        final CountDownLatch done = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            posters.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        poster.post(url, timeout, timeout, headers, "concurrent".getBytes("UTF-8"));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        posters.shutdown();
+        assertThat(bodies).hasSize(40);
+        assertThat(maxActive.get()).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    public void testThrowsWhenTheServerIsDown() throws Exception {
+        server.stop(0);
+        try {
+            poster.post(url, timeout, timeout, headers, "down".getBytes("UTF-8"));
+            fail("Expected the post to fail");
+        } catch (PostException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,145 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Duration;
+import com.appoptics.metrics.client.HttpResponse;
+import com.appoptics.metrics.client.IPoster;
+import com.appoptics.metrics.client.Measures;
+import com.appoptics.metrics.client.PostMeasuresResult;
+import com.appoptics.metrics.client.PostResult;
+import com.appoptics.metrics.client.Tag;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PostRetrierTest {
+    final AtomicInteger posts = new AtomicInteger();
+    final AtomicInteger failuresLeft = new AtomicInteger();
+    final byte[] payload = "{}".getBytes();
+
+    @Test
+    public void testBackoffIsBoundedAndGrows() throws Exception {
+        RetryPolicy policy = new RetryPolicy(10, 1, 8, TimeUnit.SECONDS);
+        Random random = new Random(1);
+        for (int retry = 0; retry < 10; retry++) {
+            long ceiling = TimeUnit.SECONDS.toNanos(Math.min(8, 1 << retry));
+            for (int i = 0; i < 100; i++) {
+                assertThat(policy.backoffNanos(retry, random)).isBetween(0L, ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void testRetriesFailedResultsUntilTheySucceed() throws Exception {
+        failuresLeft.set(2);
+        PostRetrier retrier = retrier(new RetryPolicy(5, 1, 2, TimeUnit.MILLISECONDS));
+        PostMeasuresResult result = retrier.retry(batch(60), failed(503));
+        assertThat(result.results).hasSize(2);
+        assertThat(result.results.get(0).isError()).isFalse();
+        assertThat(result.results.get(1).isError()).isFalse();
+        assertThat(posts.get()).isEqualTo(3);
+        assertThat(retrier.getRetries().getCount()).isEqualTo(3);
+        assertThat(retrier.getRecoveries().getCount()).isEqualTo(1);
+        assertThat(retrier.getGiveUps().getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDoesNotRetryRejectedPosts() throws Exception {
+        PostRetrier retrier = retrier(new RetryPolicy(5, 1, 2, TimeUnit.MILLISECONDS));
+        PostMeasuresResult result = retrier.retry(batch(60), failed(400));
+        assertThat(result.results.get(0).response.getResponseCode()).isEqualTo(400);
+        assertThat(posts.get()).isEqualTo(0);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxRetries() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        PostRetrier retrier = retrier(new RetryPolicy(3, 1, 2, TimeUnit.MILLISECONDS));
+        PostMeasuresResult result = retrier.retry(batch(60), failed(503));
+        assertThat(result.results.get(0).isError()).isTrue();
+        assertThat(posts.get()).isEqualTo(3);
+        assertThat(retrier.getGiveUps().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGivesUpAtTheEndOfThePeriod() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        PostRetrier retrier = retrier(new RetryPolicy(3, 1, 1, TimeUnit.HOURS));
+        long start = System.nanoTime();
+        retrier.retry(batch(1), failed(503));
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(retrier.getGiveUps().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDoesNotStartARetryThatCouldRunIntoTheDeadline() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        PostRetrier retrier = retrier(new RetryPolicy(3, 1, 2, TimeUnit.MILLISECONDS), new Duration(10, TimeUnit.SECONDS));
+        retrier.retry(batch(5), failed(503));
+        assertThat(posts.get()).isEqualTo(0);
+        assertThat(retrier.getGiveUps().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testBatchesOfACycleShareItsDeadline() throws Exception {
+        failuresLeft.set(Integer.MAX_VALUE);
+        PostRetrier retrier = retrier(new RetryPolicy(1000, 20, 20, TimeUnit.MILLISECONDS), new Duration(1, TimeUnit.MILLISECONDS));
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(300);
+        for (int i = 0; i < 3; i++) {
+            retrier.retry(new Batch(new Measures(), 0, deadline), failed(503));
+        }
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(600));
+        assertThat(retrier.getGiveUps().getCount()).isEqualTo(3);
+    }
+
+    private PostRetrier retrier(RetryPolicy policy) {
+        return retrier(policy, null);
+    }
+
+    private PostRetrier retrier(RetryPolicy policy, Duration readTimeout) {
+        ReporterAttributes atts = new ReporterAttributes();
+        atts.token = "token";
+        atts.readTimeout = readTimeout;
+        atts.poster = new IPoster() {
+            @Override
+            public HttpResponse post(String url, Duration connectTimeout, Duration readTimeout,
+                                     Map<String, String> headers, byte[] payload) {
+                posts.incrementAndGet();
+                return response(failuresLeft.getAndDecrement() > 0 ? 503 : 200);
+            }
+        };
+        return new PostRetrier(policy, new PayloadPoster(atts));
+    }
+
+    private static Batch batch(int period) {
+        return new Batch(new Measures(Collections.<Tag>emptyList(), 0L, period), 0,
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(period));
+    }
+
+    private PostMeasuresResult failed(int code) {
+        PostMeasuresResult result = new PostMeasuresResult();
+        result.results.add(new PostResult(false, payload, response(code)));
+        result.results.add(new PostResult(false, payload, response(200)));
+        return result;
+    }
+
+    private static HttpResponse response(final int code) {
+        return new HttpResponse() {
+            @Override
+            public int getResponseCode() {
+                return code;
+            }
+
+            @Override
+            public byte[] getResponseBody() {
+                return "{}".getBytes();
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.AppopticsClient;
+import com.appoptics.metrics.client.Measures;
+import com.appoptics.metrics.client.PostMeasuresResult;
+import com.appoptics.metrics.client.PostResult;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PostingQueueTest {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+    PostingQueue queue;
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        queue.shutdown();
+    }
+
+    @Test
+    public void testDropsOldestBatchWhenFull() throws Exception {
+        queue = new PostingQueue(2, 1, PostingQueue.OverflowPolicy.DROP_OLDEST, "test");
+        FutureTask<Void> blocking = task();
+        queue.enqueue(batch(), blocking);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        FutureTask<Void> oldest = task();
+        queue.enqueue(batch(), oldest);
+        queue.enqueue(batch(), task());
+        assertThat(queue.getDepth()).isEqualTo(2);
+
+        FutureTask<Void> newest = task();
+        queue.enqueue(batch(), newest);
+        assertThat(queue.getDepth()).isEqualTo(2);
+        assertThat(queue.getDropped()).isEqualTo(1);
+        assertThat(oldest.isCancelled()).isTrue();
+
+        release.countDown();
+        newest.get(5, TimeUnit.SECONDS);
+        assertThat(queue.getMaxWait(TimeUnit.NANOSECONDS)).isGreaterThan(0);
+    }
+
+    @Test
+    public void testBlocksWhenFull() throws Exception {
+        queue = new PostingQueue(1, 1, PostingQueue.OverflowPolicy.BLOCK, "test");
+        queue.enqueue(batch(), task());
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        queue.enqueue(batch(), task());
+
+        final FutureTask<Void> last = task();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                queue.enqueue(batch(), last);
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive()).isTrue();
+
+        release.countDown();
+        producer.join(5000);
+        last.get(5, TimeUnit.SECONDS);
+        assertThat(queue.getDropped()).isEqualTo(0);
+    }
+
+    @Test
+    public void testHandsDroppedBatchesToTheResultHandler() throws Exception {
+        queue = new PostingQueue(1, 1, PostingQueue.OverflowPolicy.DROP_OLDEST, "test");
+        AppopticsClient client = mock(AppopticsClient.class);
+        when(client.postMeasures(any(Measures.class))).thenAnswer(new Answer<PostMeasuresResult>() {
+            @Override
+            public PostMeasuresResult answer(InvocationOnMock invocation) throws Throwable {
+                started.countDown();
+                release.await();
+                return new PostMeasuresResult();
+            }
+        });
+        final List<PostResult> failures = new CopyOnWriteArrayList<PostResult>();
+        BatchPoster poster = new BatchPoster(client, null, 1, queue, null, new BatchPoster.ResultHandler() {
+            @Override
+            public void handle(Batch batch, PostMeasuresResult result) {
+                for (PostResult postResult : result.results) {
+                    if (postResult.isError()) {
+                        failures.add(postResult);
+                    }
+                }
+            }
+        }, "test");
+        poster.submit(batch());
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        poster.submit(batch());
+        byte[] payload = "{}".getBytes("UTF-8");
+        poster.submit(new Batch(payload, 1, System.nanoTime() + TimeUnit.MINUTES.toNanos(1)));
+        poster.submit(batch());
+
+        assertThat(queue.getDropped()).isEqualTo(2);
+        assertThat(failures).hasSize(2);
+        assertThat(failures.get(1).payload).isEqualTo(payload);
+        assertThat(PostResults.isRetryable(failures.get(1))).isTrue();
+    }
+
+    @Test
+    public void testShutdownReleasesABlockedProducer() throws Exception {
+        queue = new PostingQueue(1, 1, PostingQueue.OverflowPolicy.BLOCK, "test");
+        queue.enqueue(batch(), task());
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        queue.enqueue(batch(), task());
+
+        final AtomicReference<Exception> rejected = new AtomicReference<Exception>();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.enqueue(batch(), task());
+                } catch (RejectedExecutionException e) {
+                    rejected.set(e);
+                }
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertThat(producer.isAlive()).isTrue();
+
+        queue.shutdown();
+        producer.join(5000);
+        assertThat(producer.isAlive()).isFalse();
+        assertThat(rejected.get()).isNotNull();
+    }
+
+    private Batch batch() {
+        return new Batch(new Measures(), 0, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+    }
+
+    private FutureTask<Void> task() {
+        return new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                release.await();
+                return null;
+            }
+        });
+    }
+}
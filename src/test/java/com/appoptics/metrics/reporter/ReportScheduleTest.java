@@ -0,0 +1,75 @@
+package com.appoptics.metrics.reporter;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportScheduleTest {
+    static final long MINUTE = 60000;
+
+    @Test
+    public void testAlignsEpochsToThePeriod() throws Exception {
+        ReportSchedule schedule = new ReportSchedule(true, 0, TimeUnit.SECONDS, "pod-1");
+        assertThat(schedule.epoch(1500000017999L, MINUTE)).isEqualTo(1500000000L);
+        assertThat(schedule.epoch(1500000017999L, 0)).isEqualTo(1500000017L);
+        assertThat(new ReportSchedule(false, 0, TimeUnit.SECONDS, "pod-1").epoch(1500000017999L, MINUTE))
+                .isEqualTo(1500000017L);
+    }
+
+    @Test
+    public void testLateAndEarlyRunsKeepTheirScheduledEpoch() throws Exception {
+        ReportSchedule schedule = new ReportSchedule(true, 59, TimeUnit.SECONDS, "pod-7");
+        long jitter = schedule.jitterMillis(MINUTE);
+        long boundary = 1500000000000L - 1500000000000L % MINUTE;
+        long scheduled = boundary + jitter;
+        long expected = boundary / 1000;
+        assertThat(schedule.epoch(scheduled, MINUTE)).isEqualTo(expected);
+        assertThat(schedule.epoch(scheduled + MINUTE / 2, MINUTE)).isEqualTo(expected);
+        assertThat(schedule.epoch(scheduled + MINUTE - MINUTE / 10 - 1, MINUTE)).isEqualTo(expected);
+        assertThat(schedule.epoch(scheduled - 50, MINUTE)).isEqualTo(expected);
+        assertThat(schedule.epoch(scheduled - MINUTE / 10, MINUTE)).isEqualTo(expected);
+        assertThat(schedule.epoch(scheduled + MINUTE, MINUTE)).isEqualTo(expected + 60);
+    }
+
+    @Test
+    public void testInstancesReportTheSameEpochWhateverTheirJitter() throws Exception {
+        long boundary = 1500000000000L - 1500000000000L % MINUTE;
+        for (int i = 0; i < 100; i++) {
+            ReportSchedule schedule = new ReportSchedule(true, 60, TimeUnit.SECONDS, "pod-" + i);
+            long late = boundary + schedule.jitterMillis(MINUTE) + 5000;
+            assertThat(schedule.epoch(late, MINUTE)).isEqualTo(boundary / 1000);
+        }
+    }
+
+    @Test
+    public void testStartsOnTheNextBoundaryPlusAFixedJitter() throws Exception {
+        ReportSchedule schedule = new ReportSchedule(true, 30, TimeUnit.SECONDS, "pod-1");
+        long jitter = schedule.jitterMillis(MINUTE);
+        assertThat(jitter).isBetween(0L, 30000L);
+        assertThat(new ReportSchedule(true, 30, TimeUnit.SECONDS, "pod-1").jitterMillis(MINUTE)).isEqualTo(jitter);
+        for (long now = 10 * MINUTE; now < 12 * MINUTE; now += 997) {
+            long start = now + schedule.initialDelayMillis(now, MINUTE);
+            assertThat(start % MINUTE).isEqualTo(jitter);
+            assertThat(start - now).isLessThan(MINUTE);
+        }
+    }
+
+    @Test
+    public void testSpreadsInstancesOverTheJitter() throws Exception {
+        Set<Long> seconds = new HashSet<Long>();
+        for (int i = 0; i < 1000; i++) {
+            seconds.add(new ReportSchedule(true, 60, TimeUnit.SECONDS, "pod-" + i).jitterMillis(MINUTE) / 1000);
+        }
+        assertThat(seconds.size()).isGreaterThan(50);
+    }
+
+    @Test
+    public void testCapsTheJitterBelowThePeriod() throws Exception {
+        ReportSchedule schedule = new ReportSchedule(true, 1, TimeUnit.HOURS, "pod-1");
+        assertThat(schedule.jitterMillis(MINUTE)).isLessThan(MINUTE);
+    }
+}
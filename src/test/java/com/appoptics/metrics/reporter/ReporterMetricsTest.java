@@ -0,0 +1,69 @@
+package com.appoptics.metrics.reporter;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReporterMetricsTest {
+    MetricRegistry registry = new MetricRegistry();
+    ReporterMetrics metrics = new ReporterMetrics("self", false, new NameCache(10), new TagLimiter(), new DeltaTracker());
+
+    @Before
+    public void setUp() throws Exception {
+        metrics.register(registry);
+    }
+
+    @Test
+    public void testPublishesPostLatenciesWhenTheCycleEnds() throws Exception {
+        metrics.posted(TimeUnit.MILLISECONDS.toNanos(5), 100);
+        assertThat(latency().getCount()).isEqualTo(0);
+
+        metrics.cycleEnded(1);
+        assertThat(latency().getCount()).isEqualTo(1);
+        assertThat(latency().getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testCountsLatenciesPastTheCapAsDropped() throws Exception {
+        for (int i = 0; i < 1030; i++) {
+            metrics.posted(1000, 1);
+        }
+        metrics.cycleEnded(1);
+        assertThat(latency().getCount()).isEqualTo(1024);
+        assertThat(registry.counter("self.post.latency.dropped").getCount()).isEqualTo(6);
+
+        // the cap applies per cycle
+        metrics.posted(1000, 1);
+        metrics.cycleEnded(1);
+        assertThat(latency().getCount()).isEqualTo(1025);
+    }
+
+    @Test
+    public void testKeepsEveryLatencyRecordedWhileCyclesEnd() throws Exception {
+        Thread poster = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100000; i++) {
+                    metrics.posted(1000, 1);
+                }
+            }
+        });
+        poster.start();
+        while (poster.isAlive()) {
+            metrics.cycleEnded(1);
+        }
+        poster.join();
+        metrics.cycleEnded(1);
+        long dropped = registry.counter("self.post.latency.dropped").getCount();
+        assertThat(latency().getCount() + dropped).isEqualTo(100000);
+    }
+
+    private Timer latency() {
+        return registry.timer("self.post.latency");
+    }
+}
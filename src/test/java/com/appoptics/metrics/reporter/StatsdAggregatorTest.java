@@ -0,0 +1,143 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class StatsdAggregatorTest {
+    MetricRegistry registry = new MetricRegistry();
+    StatsdAggregator aggregator;
+
+    @Before
+    public void setUp() throws Exception {
+        aggregator = new StatsdAggregator(registry, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        aggregator.close();
+    }
+
+    @Test
+    public void testAggregatesLinesIntoTaggedMetrics() throws Exception {
+        ingest("jobs:1|c|#queue:mail\n" +
+                "jobs:2|c|@0.5|#queue:mail\n" +
+                "jobs:7|c\n" +
+                "temperature:21.5|g|#room:kitchen\n" +
+                "temperature:-1.5|g|#room:kitchen\n" +
+                "latency:2.5|ms|#route:home,method:get\n" +
+                "size:300|h\n");
+        assertThat(Appoptics.metric(registry, "jobs").tag("queue", "mail").meter().getCount()).isEqualTo(5);
+        assertThat(Appoptics.metric(registry, "jobs").meter().getCount()).isEqualTo(7);
+        Gauge<?> temperature = Appoptics.metric(registry, "temperature").tag("room", "kitchen")
+                .gauge(new StatsdAggregator.ReceivedGauge());
+        assertThat(temperature.getValue()).isEqualTo(20.0);
+        assertThat(Appoptics.metric(registry, "latency").tags(new Tag("route", "home"), new Tag("method", "get"))
+                .timer().getSnapshot().getMax()).isCloseTo(TimeUnit.MICROSECONDS.toNanos(2500), within(50000L));
+        assertThat(Appoptics.metric(registry, "size").histogram().getSnapshot().getMax()).isCloseTo(300, within(6L));
+        assertThat(aggregator.getLines()).isEqualTo(7);
+        assertThat(aggregator.getMalformed()).isEqualTo(0);
+    }
+
+    @Test
+    public void testDropsMalformedLines() throws Exception {
+        ingest("no-value|c\n" +
+                "jobs:x|c\n" +
+                "jobs:1|s\n" +
+                "jobs:1|c|@2\n" +
+                "jobs:1|c|#novalue\n" +
+                ":1|c\n" +
+                "jobs:1|c\n");
+        assertThat(aggregator.getMalformed()).isEqualTo(6);
+        assertThat(Appoptics.metric(registry, "jobs").meter().getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReceivesLinesFromAnEmitter() throws Exception {
+        StatsdEmitter emitter = new StatsdEmitter(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), aggregator.getPort()), 64);
+        for (int i = 0; i < 10; i++) {
+            emitter.count("requests", 1, new Tag("host", "worker-1"));
+        }
+        emitter.timing("latency", 12);
+        emitter.gauge("queue.depth", -3);
+        emitter.close();
+        assertThat(emitter.getSent()).isEqualTo(13);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (aggregator.getLines() < 13 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(aggregator.getPackets()).isGreaterThan(1);
+        assertThat(Appoptics.metric(registry, "requests").tag("host", "worker-1").meter().getCount()).isEqualTo(10);
+        assertThat(Appoptics.metric(registry, "latency").timer().getCount()).isEqualTo(1);
+        assertThat(Appoptics.metric(registry, "queue.depth").gauge(new StatsdAggregator.ReceivedGauge()).getValue())
+                .isEqualTo(-3.0);
+    }
+
+    @Test
+    public void testEmitterDropsLinesLargerThanAPacket() throws Exception {
+        StatsdEmitter emitter = new StatsdEmitter(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), aggregator.getPort()), 16);
+        emitter.count("a.name.that.does.not.fit", 1);
+        emitter.close();
+        assertThat(emitter.getDropped()).isEqualTo(1);
+        assertThat(emitter.getSent()).isEqualTo(0);
+    }
+
+    @Test
+    public void testReusesMetricsAcrossLines() throws Exception {
+        ingest("jobs:1|c|#queue:mail\n" +
+                "temperature:1|g\n");
+        Meter jobs = Appoptics.metric(registry, "jobs").tag("queue", "mail").meter();
+        Gauge<?> temperature = Appoptics.metric(registry, "temperature").gauge(new StatsdAggregator.ReceivedGauge());
+        ingest("jobs:2|c|#queue:mail\n" +
+                "temperature:2|g\n");
+        assertThat(Appoptics.metric(registry, "jobs").tag("queue", "mail").meter()).isSameAs(jobs);
+        assertThat(jobs.getCount()).isEqualTo(3);
+        assertThat(Appoptics.metric(registry, "temperature").gauge(new StatsdAggregator.ReceivedGauge()))
+                .isSameAs(temperature);
+        assertThat(temperature.getValue()).isEqualTo(2.0);
+
+        registry.removeMatching(MetricFilter.ALL);
+        ingest("jobs:4|c|#queue:mail\n");
+        assertThat(Appoptics.metric(registry, "jobs").tag("queue", "mail").meter().getCount()).isEqualTo(4);
+    }
+
+    @Test
+    public void testEmitterEscapesDelimitersAndFlushesPeriodically() throws Exception {
+        StatsdEmitter emitter = new StatsdEmitter(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), aggregator.getPort()),
+                StatsdEmitter.DEFAULT_PACKET_BYTES, 10, TimeUnit.MILLISECONDS);
+        try {
+            emitter.count("jobs|done", 1, new Tag("queue", "mail,low|c:1"), new Tag("host#1", "worker"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (aggregator.getLines() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertThat(aggregator.getMalformed()).isEqualTo(0);
+            assertThat(Appoptics.metric(registry, "jobs_done")
+                    .tags(new Tag("queue", "mail_low_c_1"), new Tag("host_1", "worker"))
+                    .meter().getCount()).isEqualTo(1);
+        } finally {
+            emitter.close();
+        }
+    }
+
+    private void ingest(String lines) throws Exception {
+        byte[] packet = lines.getBytes("UTF-8");
+        aggregator.ingest(packet, packet.length);
+    }
+}
@@ -0,0 +1,59 @@
+package com.appoptics.metrics.reporter;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StripedReservoirTest {
+    StripedReservoir reservoir = new StripedReservoir(4, new LogLinearHistogram());
+
+    @Test
+    public void testSnapshotsDrainTheStripes() throws Exception {
+        reservoir.update(10);
+        reservoir.update(20);
+        assertThat(reservoir.size()).isEqualTo(2);
+        assertThat(reservoir.getSnapshot().getValues()).containsExactly(10, 20);
+        assertThat(reservoir.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testMergesStripesOfManyThreads() throws Exception {
+        final int threads = 16;
+        final int updates = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long value = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < updates; i++) {
+                        reservoir.update(value);
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        long total = 0;
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            total += reservoir.getSnapshot().size();
+        }
+        total += reservoir.getSnapshot().size();
+        executor.shutdown();
+        assertThat(total).isEqualTo((long) threads * updates);
+    }
+
+    @Test
+    public void testRoundsStripesToPowersOfTwo() throws Exception {
+        StripedReservoir threeStripes = new StripedReservoir(3, new LogLinearHistogram());
+        for (int i = 0; i < 100; i++) {
+            threeStripes.update(i);
+        }
+        assertThat(threeStripes.getSnapshot().size()).isEqualTo(100);
+    }
+}
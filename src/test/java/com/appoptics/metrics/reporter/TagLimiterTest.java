@@ -0,0 +1,90 @@
+package com.appoptics.metrics.reporter;
+
+import com.appoptics.metrics.client.Tag;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TagLimiterTest {
+    MetricRegistry registry = new MetricRegistry();
+    TagLimiter limiter = Appoptics.tagLimiter();
+
+    @After
+    public void tearDown() throws Exception {
+        limiter.setMaxTagSetsPerName(Integer.MAX_VALUE);
+        limiter.setMaxTagSets(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testFoldsTagSetsPastThePerNameCap() throws Exception {
+        limiter.setMaxTagSetsPerName(2);
+        long folded = limiter.getFolded();
+        Counter first = Appoptics.metric(registry, "perName").tag("user", 1).counter();
+        Counter second = Appoptics.metric(registry, "perName").tag("user", 2).counter();
+        Counter third = Appoptics.metric(registry, "perName").tag("user", 3).counter();
+        Counter fourth = Appoptics.metric(registry, "perName").tag("user", 4).counter();
+        assertThat(first).isNotSameAs(second);
+        assertThat(third).isSameAs(fourth).isNotSameAs(first).isNotSameAs(second);
+        assertThat(Appoptics.metric(registry, "perName").tag("user", 1).counter()).isSameAs(first);
+        assertThat(Appoptics.metric(registry, "perName").tag("user", TagLimiter.OVERFLOW_VALUE).counter())
+                .isSameAs(third);
+        assertThat(limiter.getFolded() - folded).isEqualTo(2);
+        assertThat(limiter.size("perName")).isEqualTo(3);
+        assertThat(Appoptics.metric(registry, "other").tag("user", 1).counter()).isNotSameAs(third);
+    }
+
+    @Test
+    public void testFoldsTagSetsPastTheGlobalCap() throws Exception {
+        limiter.setMaxTagSets(limiter.size() + 1);
+        long folded = limiter.getFolded();
+        Counter first = Appoptics.metric(registry, "global").tag("a", "b").counter();
+        Counter second = Appoptics.metric(registry, "global").tag("a", "c").counter();
+        assertThat(first).isNotSameAs(second);
+        assertThat(limiter.getFolded()).isGreaterThan(folded);
+        assertThat(registry.getCounters()).hasSize(2);
+        assertThat(nameOf(first)).doesNotContain(TagLimiter.OVERFLOW_VALUE);
+        assertThat(nameOf(second)).contains(TagLimiter.OVERFLOW_VALUE);
+        assertThat(limiter.fold(new Signal("global", Collections.singletonList(new Tag("a", "c")), false)).tags)
+                .containsExactly(new Tag("a", TagLimiter.OVERFLOW_VALUE));
+    }
+
+    @Test
+    public void testRemovalsFreeTagSets() throws Exception {
+        limiter.setMaxTagSetsPerName(1);
+        Counter first = Appoptics.metric(registry, "removed").tag("user", 1).counter();
+        Appoptics.metric(registry, "removed").tag("user", 1).remove();
+        assertThat(limiter.size("removed")).isEqualTo(0);
+        Counter second = Appoptics.metric(registry, "removed").tag("user", 2).counter();
+        assertThat(second).isNotSameAs(first);
+        assertThat(registry.getCounters().firstKey()).doesNotContain(TagLimiter.OVERFLOW_VALUE);
+    }
+
+    @Test
+    public void testCollectedRegistriesFreeTagSets() throws Exception {
+        MetricRegistry throwaway = new MetricRegistry();
+        Appoptics.metric(throwaway, "collected").tag("user", 1).counter();
+        assertThat(limiter.size("collected")).isEqualTo(1);
+        throwaway = null;
+        for (int i = 0; i < 50 && limiter.size("collected") > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            MetricHandles.registryCount();
+        }
+        assertThat(limiter.size("collected")).isEqualTo(0);
+    }
+
+    private String nameOf(Counter counter) {
+        for (Map.Entry<String, Counter> entry : registry.getCounters().entrySet()) {
+            if (entry.getValue() == counter) {
+                return entry.getKey();
+            }
+        }
+        throw new AssertionError("Counter is not registered");
+    }
+}